@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * File helpers shared by the benchmarks.
+ *
+ * @author Blake Dickie
+ */
+public class BenchmarkFiles {
+
+    private BenchmarkFiles() {
+    }
+
+    public static File createTempDirectory( String prefix ) throws IOException {
+        return Files.createTempDirectory( prefix ).toFile();
+    }
+
+    public static void write( File file, String content ) throws IOException {
+        FileUtils.writeStringToFile( file, content, StandardCharsets.UTF_8.name() );
+    }
+
+    public static void deleteRecursively( File directory ) throws IOException {
+        if ( directory != null ) {
+            FileUtils.deleteDirectory( directory );
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so every result also reports the
+ * allocation rate. Accepts the usual JMH command line options, for example a
+ * benchmark name pattern or <code>-p containers=1000</code>.
+ *
+ * @author Blake Dickie
+ */
+public class BenchmarkRunner {
+
+    public static void main( String[] args ) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions( args );
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent( commandLine );
+        options.addProfiler( GCProfiler.class );
+        if ( commandLine.getIncludes().isEmpty() ) {
+            options.include( BenchmarkRunner.class.getPackage().getName() + ".*" );
+        }
+        new Runner( options.build() ).run();
+    }
+
+}
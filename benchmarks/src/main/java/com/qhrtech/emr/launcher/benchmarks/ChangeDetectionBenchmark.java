@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks;
+
+import com.qhrtech.emr.launcher.FsyncPolicy;
+import com.qhrtech.emr.launcher.OutputManifest;
+import com.qhrtech.emr.launcher.OutputWriter;
+import com.qhrtech.emr.launcher.StagingOutputSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how changes to the generated files are detected: comparing whole
+ * manifests, and streaming a file through the staging sink when its content
+ * has not changed.
+ *
+ * @author Blake Dickie
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ChangeDetectionBenchmark {
+
+    @Param( { "100", "10000" } )
+    public int files;
+
+    @Param( { "4096", "1048576" } )
+    public int fileSize;
+
+    private File workDir;
+    private OutputManifest manifest;
+    private OutputManifest manifestCopy;
+    private OutputWriter writer;
+    private File target;
+    private byte[] content;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+        workDir = BenchmarkFiles.createTempDirectory( "change-benchmark" );
+        writer = new OutputWriter( FsyncPolicy.NONE );
+
+        Random random = new Random( 42 );
+        content = new byte[fileSize];
+        for ( int i = 0; i < content.length; i++ ) {
+            content[i] = (byte) ( 'a' + random.nextInt( 26 ) );
+        }
+        target = new File( workDir, "target.conf" ).getAbsoluteFile();
+        Files.write( target.toPath(), content );
+
+        manifest = new OutputManifest();
+        manifestCopy = new OutputManifest();
+        byte[] digestSource = new byte[64];
+        for ( int i = 0; i < files; i++ ) {
+            random.nextBytes( digestSource );
+            OutputManifest.Entry entry = OutputManifest.Entry.of( digestSource );
+            File file = new File( workDir, "conf.d/service" + i + ".conf" ).getAbsoluteFile();
+            manifest.put( file, entry );
+            manifestCopy.put( file, new OutputManifest.Entry( entry.getDigest(), entry.getLength() ) );
+        }
+        manifest.put( target, OutputManifest.Entry.of( content ).withLastModified( target.lastModified() ) );
+        manifestCopy.put( target, OutputManifest.Entry.of( content ).withLastModified( target.lastModified() ) );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively( workDir );
+    }
+
+    @Benchmark
+    public boolean compareManifests() {
+        return manifest.equals( manifestCopy );
+    }
+
+    @Benchmark
+    public OutputManifest stageUnchangedFile() throws IOException {
+        StagingOutputSink sink = new StagingOutputSink( manifest, writer );
+        try {
+            try ( OutputStream out = sink.open( target ) ) {
+                out.write( content );
+            }
+            sink.commit();
+        } finally {
+            sink.discard();
+        }
+        return sink.getManifest();
+    }
+
+}
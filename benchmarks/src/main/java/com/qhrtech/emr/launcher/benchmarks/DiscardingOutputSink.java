@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks;
+
+import com.qhrtech.emr.launcher.OutputSink;
+import java.io.File;
+import java.io.OutputStream;
+
+/**
+ * Output sink that throws the output away, so the benchmarks measure the
+ * generators and not the disk.
+ *
+ * @author Blake Dickie
+ */
+public class DiscardingOutputSink implements OutputSink {
+
+    private long bytes;
+
+    @Override
+    public OutputStream open( File file ) {
+        return new OutputStream() {
+
+            @Override
+            public void write( int b ) {
+                bytes++;
+            }
+
+            @Override
+            public void write( byte[] b, int off, int len ) {
+                bytes += len;
+            }
+        };
+    }
+
+    /**
+     * @return the number of bytes written, which the benchmarks return so
+     *         the output cannot be optimized away.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+}
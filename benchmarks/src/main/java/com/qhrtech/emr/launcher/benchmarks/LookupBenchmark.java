@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks;
+
+import com.qhrtech.emr.launcher.docker.CertificateIndex;
+import com.qhrtech.emr.launcher.docker.DockerContainer;
+import com.qhrtech.emr.launcher.docker.DockerPort;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-container lookups the generators make: finding a port and
+ * finding the certificate for a virtual host.
+ *
+ * @author Blake Dickie
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class LookupBenchmark {
+
+    @Param( { "3", "100" } )
+    public int ports;
+
+    @Param( { "10", "1000" } )
+    public int certificates;
+
+    private DockerContainer container;
+    private int lastPort;
+    private CertificateIndex certIndex;
+    private String[] hosts;
+    private int next;
+
+    @Setup( Level.Trial )
+    public void setUp() {
+        container = new DockerContainer();
+        for ( int i = 0; i < ports; i++ ) {
+            DockerPort port = new DockerPort();
+            port.setContainerPort( 8000 + i );
+            port.setUdp( i % 4 == 1 );
+            port.setMachinePort( 32768 + i );
+            container.addPort( port );
+        }
+        lastPort = 8000 + ports - 1;
+
+        List<String> names = new ArrayList<>();
+        names.add( "default" );
+        names.add( "example.com" );
+        for ( int i = 0; i < certificates; i++ ) {
+            names.add( "app" + i + ".example.com" );
+        }
+        certIndex = new CertificateIndex( names );
+
+        hosts = new String[64];
+        for ( int i = 0; i < hosts.length; i++ ) {
+            // A mix of exact matches, parent domain matches and misses.
+            switch ( i % 3 ) {
+                case 0:
+                    hosts[i] = "app" + ( i * 7 % certificates ) + ".example.com";
+                    break;
+                case 1:
+                    hosts[i] = "www.app" + ( i * 7 % certificates ) + ".example.com";
+                    break;
+                default:
+                    hosts[i] = "service" + i + ".example.org";
+            }
+        }
+    }
+
+    @Benchmark
+    public DockerPort findFirstPort() {
+        return container.findPort( 8000 );
+    }
+
+    @Benchmark
+    public DockerPort findLastPort() {
+        return container.findPort( lastPort );
+    }
+
+    @Benchmark
+    public DockerPort findMissingPort() {
+        return container.findPort( 1 );
+    }
+
+    @Benchmark
+    public String findCertificate() {
+        next = ( next + 1 ) & ( hosts.length - 1 );
+        return certIndex.findBestMatch( hosts[next] );
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks;
+
+import com.qhrtech.emr.launcher.docker.DockerState;
+import com.qhrtech.emr.launcher.docker.NginxProxyGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates the nginx proxy configuration for fleets of different sizes.
+ *
+ * @author Blake Dickie
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class NginxProxyGeneratorBenchmark {
+
+    @Param( { "10", "1000", "10000" } )
+    public int containers;
+
+    private File workDir;
+    private DockerState state;
+    private NginxProxyGenerator generator;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+        workDir = BenchmarkFiles.createTempDirectory( "nginx-benchmark" );
+        File certs = new File( workDir, "certs" );
+        File confs = new File( workDir, "confs" );
+        certs.mkdir();
+        confs.mkdir();
+        BenchmarkFiles.write( new File( certs, "default.crt" ), "" );
+        BenchmarkFiles.write( new File( certs, "example.com.crt" ), "" );
+        for ( int i = 0; i < containers / SyntheticFleet.REPLICAS_PER_HOST; i += 10 ) {
+            BenchmarkFiles.write( new File( confs, SyntheticFleet.virtualHost( i * SyntheticFleet.REPLICAS_PER_HOST ) + ".conf" ), "" );
+        }
+
+        state = SyntheticFleet.build( containers );
+        generator = new NginxProxyGenerator( new File( workDir, "proxy.conf" ), certs, confs );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively( workDir );
+    }
+
+    @Benchmark
+    public long generate() throws Exception {
+        DiscardingOutputSink sink = new DiscardingOutputSink();
+        generator.generate( state, sink );
+        return sink.getBytes();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks;
+
+import com.qhrtech.emr.launcher.docker.DockerContainer;
+import com.qhrtech.emr.launcher.docker.DockerPort;
+import com.qhrtech.emr.launcher.docker.DockerState;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds synthetic docker states that look like a real fleet: a few hosts, a
+ * few replicas per virtual host, and the usual noise in each environment.
+ *
+ * @author Blake Dickie
+ */
+public class SyntheticFleet {
+
+    public static final int REPLICAS_PER_HOST = 3;
+    public static final int DOCKER_HOSTS = 8;
+
+    private SyntheticFleet() {
+    }
+
+    /**
+     * Builds a docker state. The same size always produces the same state.
+     *
+     * @param containers the number of containers.
+     *
+     * @return the state.
+     */
+    public static DockerState build( int containers ) {
+        Random random = new Random( containers );
+        DockerState state = new DockerState();
+        for ( int i = 0; i < containers; i++ ) {
+            state.addContainer( container( i, random ) );
+        }
+        return state;
+    }
+
+    public static String virtualHost( int index ) {
+        return "app" + ( index / REPLICAS_PER_HOST ) + ".example.com";
+    }
+
+    private static DockerContainer container( int index, Random random ) {
+        DockerContainer container = new DockerContainer();
+        container.setContainerId( String.format( "%064x", random.nextLong() & Long.MAX_VALUE ) );
+        container.setMachineHostname( "docker" + ( index % DOCKER_HOSTS ) + ".example.com" );
+        container.setContainerIpAddress( "10." + ( index >> 16 & 0xff ) + "." + ( index >> 8 & 0xff ) + "." + ( index & 0xff ) );
+
+        Map<String, String> env = new HashMap<>();
+        env.put( "PATH", "/usr/local/sbin:/usr/local/bin:/usr/sbin:/usr/bin:/sbin:/bin" );
+        env.put( "JAVA_VERSION", "8u66" );
+        env.put( "LANG", "C.UTF-8" );
+        env.put( "HOSTNAME", container.getContainerId().substring( 0, 12 ) );
+        env.put( "VIRTUAL_HOST", virtualHost( index ) );
+        env.put( "VIRTUAL_PORT", "8080" );
+        if ( index % 5 == 0 ) {
+            env.put( "VIRTUAL_HOST_ADMIN", "admin." + virtualHost( index ) );
+            env.put( "VIRTUAL_PORT_ADMIN", "9090" );
+        }
+        if ( index % 7 == 0 ) {
+            env.put( "PROXY_CACHE", "10m" );
+        }
+        container.setEnvironment( env );
+
+        container.addPort( port( 8080, 32768 + index % 30000 ) );
+        container.addPort( port( 9090, 32768 + index % 30000 ) );
+        container.addPort( port( 8443, null ) );
+        return container;
+    }
+
+    private static DockerPort port( int containerPort, Integer machinePort ) {
+        DockerPort port = new DockerPort();
+        port.setContainerPort( containerPort );
+        port.setMachinePort( machinePort );
+        return port;
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks;
+
+import com.qhrtech.emr.launcher.TemplateProcessor;
+import com.qhrtech.emr.launcher.docker.DockerState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders a template shaped like a typical service configuration: a header,
+ * conditionals on the environment and a loop over it.
+ *
+ * @author Blake Dickie
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class TemplateProcessorBenchmark {
+
+    private static final String TEMPLATE
+                                = "# Generated configuration, do not edit.\n"
+                                  + "<#assign home = env.HOME!\"/root\">\n"
+                                  + "[server]\n"
+                                  + "home = ${home}\n"
+                                  + "user = ${env.USER!\"nobody\"}\n"
+                                  + "<#if env.JAVA_HOME??>\n"
+                                  + "java = ${env.JAVA_HOME}/bin/java\n"
+                                  + "<#else>\n"
+                                  + "java = java\n"
+                                  + "</#if>\n"
+                                  + "\n"
+                                  + "[environment]\n"
+                                  + "<#list env?keys?sort as key>\n"
+                                  + "<#if !key?starts_with(\"_\")>\n"
+                                  + "${key?lower_case} = \"${env[key]?j_string}\"\n"
+                                  + "</#if>\n"
+                                  + "</#list>\n";
+
+    private File workDir;
+    private DockerState state;
+    private TemplateProcessor processor;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+        workDir = BenchmarkFiles.createTempDirectory( "template-benchmark" );
+        File template = new File( workDir, "service.conf.ftl" );
+        BenchmarkFiles.write( template, TEMPLATE );
+
+        state = SyntheticFleet.build( 100 );
+        processor = new TemplateProcessor( template, new File( workDir, "service.conf" ) );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively( workDir );
+    }
+
+    @Benchmark
+    public long generate() throws Exception {
+        DiscardingOutputSink sink = new DiscardingOutputSink();
+        processor.generate( state, sink );
+        return sink.getBytes();
+    }
+
+}
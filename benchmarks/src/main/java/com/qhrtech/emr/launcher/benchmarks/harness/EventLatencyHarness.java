@@ -0,0 +1,314 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks.harness;
+
+import com.qhrtech.emr.launcher.TemplateLauncherManager;
+import com.qhrtech.emr.launcher.docker.DockerInstance;
+import com.qhrtech.emr.launcher.docker.NginxProxyGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the launcher against a {@link FakeDockerDaemon}, replays a storm of
+ * container events and reports how long each event took to show up in the
+ * generated proxy configuration, and in the copy of it taken by the notify
+ * command once that command completes.
+ *
+ * Arguments are name=value pairs:
+ * <ul>
+ * <li>scenario: "rolling" replaces every container one at a time, "flapping"
+ * stops and starts random containers (default rolling)</li>
+ * <li>containers: the number of containers (default 500)</li>
+ * <li>events: the number of events for the flapping scenario (default
+ * 1000)</li>
+ * <li>interval: the average time between events in milliseconds (default
+ * 10)</li>
+ * <li>notifyDelay: how long the notify command takes in milliseconds (default
+ * 0)</li>
+ * <li>notifyInterval, quietPeriod, maxDelay: passed to the launcher</li>
+ * <li>seed: the random seed (default 1)</li>
+ * </ul>
+ *
+ * Everything runs on the loopback address, so no network access is needed.
+ *
+ * @author Blake Dickie
+ */
+public class EventLatencyHarness {
+
+    private static final String MACHINE_HOSTNAME = "localhost";
+    private static final int CONTAINER_PORT = 8080;
+    private static final long SETTLE_TIMEOUT = 60000;
+
+    private final Map<String, String> options;
+    private final FakeDockerDaemon daemon = new FakeDockerDaemon();
+    private final Random random;
+    private File workDir;
+    private volatile LatencyTracker fileTracker;
+    private LatencyTracker notifyTracker;
+    private volatile IOException watcherError;
+    private int nextHostPort = 20000;
+    private int nextId = 0;
+
+    public EventLatencyHarness( Map<String, String> options ) {
+        this.options = options;
+        random = new Random( getLong( "seed", 1 ) );
+    }
+
+    public static void main( String[] args ) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for ( String arg : args ) {
+            String[] pair = arg.split( "=", 2 );
+            if ( pair.length != 2 ) {
+                System.err.println( "Arguments must be name=value: " + arg );
+                System.exit( 1 );
+            }
+            options.put( pair[0], pair[1] );
+        }
+        new EventLatencyHarness( options ).run();
+        System.exit( 0 );
+    }
+
+    public void run() throws Exception {
+        int containerCount = (int) getLong( "containers", 500 );
+        String scenario = options.containsKey( "scenario" ) ? options.get( "scenario" ) : "rolling";
+
+        daemon.start();
+        List<FakeContainer> fleet = new ArrayList<>();
+        for ( int i = 0; i < containerCount; i++ ) {
+            FakeContainer container = newContainer( i );
+            daemon.addContainer( container );
+            fleet.add( container );
+        }
+
+        workDir = Files.createTempDirectory( "launcher-harness" ).toFile();
+        File proxyFile = new File( workDir, "proxy.conf" );
+        File notifiedFile = new File( workDir, "notified.conf" );
+        fileTracker = new LatencyTracker( "event to file written", proxyFile );
+        notifyTracker = new LatencyTracker( "event to notify complete", notifiedFile );
+        startWatcher();
+
+        TemplateLauncherManager manager = TemplateLauncherManager.getInstance();
+        manager.addDockerInstance( new DockerInstance( MACHINE_HOSTNAME, daemon.getUri(), null ) );
+        manager.addGenerator( new NginxProxyGenerator( proxyFile, mkdir( "certs" ), mkdir( "confs" ) ) );
+        manager.setNotifyCommand( writeNotifyScript( proxyFile, notifiedFile ).getAbsolutePath() );
+        manager.getNotifyRunner().setMinInterval( getLong( "notifyInterval", manager.getNotifyRunner().getMinInterval() ) );
+        manager.getRefreshScheduler().setQuietPeriod( getLong( "quietPeriod", manager.getRefreshScheduler().getQuietPeriod() ) );
+        manager.getRefreshScheduler().setMaxDelay( getLong( "maxDelay", manager.getRefreshScheduler().getMaxDelay() ) );
+        manager.startMonitoring();
+        manager.startUp();
+
+        long start = System.nanoTime();
+        for ( FakeContainer container : fleet ) {
+            fileTracker.expect( marker( container ), true, start );
+        }
+        fileTracker.fileChanged();
+        if ( !fileTracker.awaitAll( SETTLE_TIMEOUT ) ) {
+            checkWatcher();
+            throw new IllegalStateException( "The initial containers never appeared: " + fileTracker.report() );
+        }
+        System.out.println( "Initial generation: " + fileTracker.report() );
+        fileTracker = new LatencyTracker( "event to file written", proxyFile );
+
+        long interval = getLong( "interval", 10 );
+        long scenarioStart = System.nanoTime();
+        int events;
+        switch ( scenario ) {
+            case "rolling":
+                events = rollingDeploy( fleet, interval );
+                break;
+            case "flapping":
+                events = flapping( fleet, (int) getLong( "events", 1000 ), interval );
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown scenario: " + scenario );
+        }
+        long scenarioTime = System.nanoTime() - scenarioStart;
+
+        fileTracker.awaitAll( SETTLE_TIMEOUT );
+        notifyTracker.awaitAll( SETTLE_TIMEOUT );
+        checkWatcher();
+
+        System.out.println( "Scenario " + scenario + ": " + events + " events over " + containerCount + " containers in "
+                            + TimeUnit.NANOSECONDS.toMillis( scenarioTime ) + "ms" );
+        System.out.println( fileTracker.report() );
+        System.out.println( notifyTracker.report() );
+        System.out.println( "Daemon requests: list=" + daemon.getListRequests() + " inspect=" + daemon.getInspectRequests()
+                            + " eventStreams=" + daemon.getEventStreams() );
+        System.out.println( "Notify runs: " + manager.getNotifyRunner().getRuns() );
+        daemon.stop();
+    }
+
+    /**
+     * Replaces every container with a new one for the same virtual host,
+     * starting the new one before stopping the old one.
+     */
+    private int rollingDeploy( List<FakeContainer> fleet, long interval ) throws InterruptedException {
+        int events = 0;
+        for ( int i = 0; i < fleet.size(); i++ ) {
+            FakeContainer old = fleet.get( i );
+            FakeContainer replacement = newContainer( i );
+            expect( replacement, true );
+            daemon.startContainer( replacement );
+            events++;
+            pause( interval );
+
+            expect( old, false );
+            daemon.stopContainer( old.getId() );
+            events++;
+            pause( interval );
+            fleet.set( i, replacement );
+        }
+        return events;
+    }
+
+    /**
+     * Stops and starts random containers.
+     */
+    private int flapping( List<FakeContainer> fleet, int events, long interval ) throws InterruptedException {
+        for ( int i = 0; i < events; i++ ) {
+            FakeContainer container = fleet.get( random.nextInt( fleet.size() ) );
+            if ( daemon.isRunning( container.getId() ) ) {
+                expect( container, false );
+                daemon.stopContainer( container.getId() );
+            } else {
+                expect( container, true );
+                daemon.startContainer( container );
+            }
+            // Exponentially distributed gaps, so events come in bursts.
+            pause( (long) ( -Math.log( 1 - random.nextDouble() ) * interval ) );
+        }
+        return events;
+    }
+
+    private void expect( FakeContainer container, boolean present ) {
+        long now = System.nanoTime();
+        fileTracker.expect( marker( container ), present, now );
+        notifyTracker.expect( marker( container ), present, now );
+    }
+
+    private FakeContainer newContainer( int index ) {
+        int id = nextId++;
+        Map<Integer, Integer> ports = Collections.singletonMap( CONTAINER_PORT, nextHostPort++ );
+        List<String> env = Arrays.asList( "PATH=/usr/local/sbin:/usr/local/bin:/usr/sbin:/usr/bin:/sbin:/bin",
+                                          "VIRTUAL_HOST=app" + ( index / 3 ) + ".example.com",
+                                          "VIRTUAL_PORT=" + CONTAINER_PORT );
+        return new FakeContainer( String.format( "%064x", id ), "app-" + id, "example/app:latest",
+                                  "172.17." + ( id >> 8 & 0xff ) + "." + ( id & 0xff ), env, ports );
+    }
+
+    private static String marker( FakeContainer container ) {
+        return " " + MACHINE_HOSTNAME + ":" + container.getPorts().get( CONTAINER_PORT ) + ";";
+    }
+
+    private File mkdir( String name ) {
+        File dir = new File( workDir, name );
+        dir.mkdirs();
+        return dir;
+    }
+
+    private File writeNotifyScript( File proxyFile, File notifiedFile ) throws IOException {
+        File script = new File( workDir, "notify.sh" );
+        File temp = new File( workDir, "notified.tmp" );
+        StringBuilder sb = new StringBuilder( "#!/bin/sh\n" );
+        long delay = getLong( "notifyDelay", 0 );
+        if ( delay > 0 ) {
+            sb.append( "sleep " ).append( delay / 1000.0 ).append( '\n' );
+        }
+        sb.append( "cp '" ).append( proxyFile.getAbsolutePath() ).append( "' '" ).append( temp.getAbsolutePath() ).append( "'\n" );
+        sb.append( "mv '" ).append( temp.getAbsolutePath() ).append( "' '" ).append( notifiedFile.getAbsolutePath() ).append( "'\n" );
+        Files.write( script.toPath(), sb.toString().getBytes( StandardCharsets.UTF_8 ) );
+        script.setExecutable( true );
+        return script;
+    }
+
+    private void startWatcher() throws IOException {
+        final WatchService watchService = FileSystems.getDefault().newWatchService();
+        workDir.toPath().register( watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY );
+        Thread thread = new Thread( new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    while ( true ) {
+                        // Polls as well, in case an event is lost.
+                        WatchKey key = watchService.poll( 100, TimeUnit.MILLISECONDS );
+                        if ( key == null ) {
+                            fileTracker.fileChanged();
+                            notifyTracker.fileChanged();
+                            continue;
+                        }
+                        for ( WatchEvent<?> event : key.pollEvents() ) {
+                            Path changed = (Path) event.context();
+                            if ( changed == null ) {
+                                continue;
+                            }
+                            if ( changed.toString().equals( fileTracker.getFile().getName() ) ) {
+                                fileTracker.fileChanged();
+                            } else if ( changed.toString().equals( notifyTracker.getFile().getName() ) ) {
+                                notifyTracker.fileChanged();
+                            }
+                        }
+                        key.reset();
+                    }
+                } catch ( InterruptedException ex ) {
+                    Thread.currentThread().interrupt();
+                } catch ( IOException ex ) {
+                    watcherError = ex;
+                }
+            }
+        }, "harness-watcher" );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    /**
+     * Fails the run if the file watcher stopped, as the latencies after that
+     * point were never measured.
+     */
+    private void checkWatcher() {
+        if ( watcherError != null ) {
+            throw new IllegalStateException( "The file watcher failed, latencies are incomplete.", watcherError );
+        }
+    }
+
+    private long getLong( String name, long defaultValue ) {
+        String value = options.get( name );
+        return value == null ? defaultValue : Long.parseLong( value );
+    }
+
+    private static void pause( long millis ) throws InterruptedException {
+        if ( millis > 0 ) {
+            Thread.sleep( millis );
+        }
+    }
+
+}
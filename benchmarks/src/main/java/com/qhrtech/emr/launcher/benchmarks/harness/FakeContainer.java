@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks.harness;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A container as served by the fake docker daemon.
+ *
+ * @author Blake Dickie
+ */
+public class FakeContainer {
+
+    private final String id;
+    private final String name;
+    private final String image;
+    private final String ipAddress;
+    private final List<String> env;
+    private final Map<Integer, Integer> ports;
+
+    public FakeContainer( String id, String name, String image, String ipAddress, List<String> env, Map<Integer, Integer> ports ) {
+        this.id = id;
+        this.name = name;
+        this.image = image;
+        this.ipAddress = ipAddress;
+        this.env = Collections.unmodifiableList( new ArrayList<>( env ) );
+        this.ports = Collections.unmodifiableMap( new LinkedHashMap<>( ports ) );
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    /**
+     * @return the environment as "NAME=value" strings.
+     */
+    public List<String> getEnv() {
+        return env;
+    }
+
+    /**
+     * @return the published ports, container port to host port. A null host
+     *         port means the port is exposed but not published.
+     */
+    public Map<Integer, Integer> getPorts() {
+        return ports;
+    }
+
+    String toListJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "{\"Id\":" ).append( Json.quote( id ) );
+        sb.append( ",\"Names\":[" ).append( Json.quote( "/" + name ) ).append( ']' );
+        sb.append( ",\"Image\":" ).append( Json.quote( image ) );
+        sb.append( ",\"Command\":\"/bin/sh\",\"Created\":0,\"Status\":\"Up\"" );
+        sb.append( ",\"Ports\":[" );
+        boolean first = true;
+        for ( Map.Entry<Integer, Integer> port : ports.entrySet() ) {
+            if ( !first ) {
+                sb.append( ',' );
+            }
+            first = false;
+            sb.append( "{\"PrivatePort\":" ).append( port.getKey() ).append( ",\"Type\":\"tcp\"" );
+            if ( port.getValue() != null ) {
+                sb.append( ",\"IP\":\"0.0.0.0\",\"PublicPort\":" ).append( port.getValue() );
+            }
+            sb.append( '}' );
+        }
+        sb.append( "],\"Labels\":{}}" );
+        return sb.toString();
+    }
+
+    String toInspectJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "{\"Id\":" ).append( Json.quote( id ) );
+        sb.append( ",\"Name\":" ).append( Json.quote( "/" + name ) );
+        sb.append( ",\"Created\":\"2015-01-01T00:00:00Z\",\"Path\":\"/bin/sh\",\"Args\":[]" );
+        sb.append( ",\"State\":{\"Running\":true,\"Paused\":false,\"Restarting\":false,\"Pid\":1,\"ExitCode\":0" );
+        sb.append( ",\"StartedAt\":\"2015-01-01T00:00:00Z\",\"FinishedAt\":\"0001-01-01T00:00:00Z\"}" );
+        sb.append( ",\"Config\":{\"Hostname\":" ).append( Json.quote( id.substring( 0, Math.min( 12, id.length() ) ) ) );
+        sb.append( ",\"Image\":" ).append( Json.quote( image ) );
+        sb.append( ",\"Env\":[" );
+        for ( int i = 0; i < env.size(); i++ ) {
+            if ( i > 0 ) {
+                sb.append( ',' );
+            }
+            sb.append( Json.quote( env.get( i ) ) );
+        }
+        sb.append( "]}" );
+        sb.append( ",\"NetworkSettings\":{\"IPAddress\":" ).append( Json.quote( ipAddress ) );
+        sb.append( ",\"Ports\":{" );
+        boolean first = true;
+        for ( Map.Entry<Integer, Integer> port : ports.entrySet() ) {
+            if ( !first ) {
+                sb.append( ',' );
+            }
+            first = false;
+            sb.append( Json.quote( port.getKey() + "/tcp" ) ).append( ':' );
+            if ( port.getValue() == null ) {
+                sb.append( "null" );
+            } else {
+                sb.append( "[{\"HostIp\":\"0.0.0.0\",\"HostPort\":" ).append( Json.quote( port.getValue().toString() ) ).append( "}]" );
+            }
+        }
+        sb.append( "}}}" );
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A stand-in for the docker engine API, serving just what the launcher uses:
+ * the container list, container inspection and the event stream, plus ping
+ * and version. It listens on the loopback address over plain HTTP, and the
+ * containers it reports are changed by calling {@link #startContainer} and
+ * {@link #stopContainer}, which also publish the matching events.
+ *
+ * @author Blake Dickie
+ */
+public class FakeDockerDaemon {
+
+    public static final String API_VERSION = "1.21";
+
+    private static final Pattern VERSION_PREFIX = Pattern.compile( "^/v[0-9.]+(/.*)$" );
+    private static final Pattern INSPECT_PATH = Pattern.compile( "^/containers/([^/]+)/json$" );
+    // Queued to end an event stream, compared by identity.
+    private static final String CLOSE_STREAM = new String( "close" );
+
+    private final Map<String, FakeContainer> containers = new LinkedHashMap<>();
+    private final List<String> history = new ArrayList<>();
+    private final List<BlockingQueue<String>> subscribers = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong listRequests = new AtomicLong();
+    private final AtomicLong inspectRequests = new AtomicLong();
+    private final AtomicLong eventStreams = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public synchronized void start() throws IOException {
+        if ( server != null ) {
+            return;
+        }
+        server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ), 0 );
+        server.createContext( "/", new HttpHandler() {
+
+            @Override
+            public void handle( HttpExchange exchange ) throws IOException {
+                try {
+                    dispatch( exchange );
+                } finally {
+                    exchange.close();
+                }
+            }
+        } );
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor( executor );
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if ( server == null ) {
+            return;
+        }
+        disconnectEventStreams();
+        server.stop( 0 );
+        executor.shutdownNow();
+        server = null;
+    }
+
+    /**
+     * @return the address to give the docker client.
+     */
+    public String getUri() {
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort();
+    }
+
+    public long getListRequests() {
+        return listRequests.get();
+    }
+
+    public long getInspectRequests() {
+        return inspectRequests.get();
+    }
+
+    public long getEventStreams() {
+        return eventStreams.get();
+    }
+
+    /**
+     * Adds a running container without publishing an event, for setting up
+     * the containers that exist before the launcher starts.
+     *
+     * @param container the container.
+     */
+    public synchronized void addContainer( FakeContainer container ) {
+        containers.put( container.getId(), container );
+    }
+
+    public void startContainer( FakeContainer container ) {
+        synchronized ( this ) {
+            containers.put( container.getId(), container );
+        }
+        publish( "start", container );
+    }
+
+    public void stopContainer( String containerId ) {
+        FakeContainer container;
+        synchronized ( this ) {
+            container = containers.remove( containerId );
+        }
+        if ( container != null ) {
+            publish( "die", container );
+        }
+    }
+
+    public synchronized boolean isRunning( String containerId ) {
+        return containers.containsKey( containerId );
+    }
+
+    /**
+     * Publishes an event without changing any container.
+     *
+     * @param status    the event status, such as "start" or "die".
+     * @param container the container the event is for.
+     */
+    public void publish( String status, FakeContainer container ) {
+        String event = "{\"status\":" + Json.quote( status )
+                       + ",\"id\":" + Json.quote( container.getId() )
+                       + ",\"from\":" + Json.quote( container.getImage() )
+                       + ",\"time\":" + TimeUnit.MILLISECONDS.toSeconds( System.currentTimeMillis() ) + "}";
+        synchronized ( this ) {
+            history.add( event );
+        }
+        for ( BlockingQueue<String> subscriber : subscribers ) {
+            subscriber.add( event );
+        }
+    }
+
+    /**
+     * Ends every open event stream, as if the daemon had restarted.
+     */
+    public void disconnectEventStreams() {
+        for ( BlockingQueue<String> subscriber : subscribers ) {
+            subscriber.add( CLOSE_STREAM );
+        }
+    }
+
+    private void dispatch( HttpExchange exchange ) throws IOException {
+        URI uri = exchange.getRequestURI();
+        String path = uri.getPath();
+        Matcher versioned = VERSION_PREFIX.matcher( path );
+        if ( versioned.matches() ) {
+            path = versioned.group( 1 );
+        }
+
+        if ( path.equals( "/_ping" ) ) {
+            send( exchange, 200, "text/plain", "OK" );
+        } else if ( path.equals( "/version" ) ) {
+            send( exchange, 200, "application/json", "{\"Version\":\"1.9.1\",\"ApiVersion\":\"" + API_VERSION + "\","
+                                                     + "\"GitCommit\":\"fake\",\"GoVersion\":\"go1.4.3\",\"Os\":\"linux\",\"Arch\":\"amd64\"}" );
+        } else if ( path.equals( "/containers/json" ) ) {
+            listRequests.incrementAndGet();
+            send( exchange, 200, "application/json", listJson() );
+        } else if ( path.equals( "/events" ) ) {
+            streamEvents( exchange, parseSince( uri.getRawQuery() ) );
+        } else {
+            Matcher inspect = INSPECT_PATH.matcher( path );
+            if ( inspect.matches() ) {
+                inspectRequests.incrementAndGet();
+                FakeContainer container;
+                synchronized ( this ) {
+                    container = containers.get( inspect.group( 1 ) );
+                }
+                if ( container == null ) {
+                    send( exchange, 404, "text/plain", "no such id: " + inspect.group( 1 ) );
+                } else {
+                    send( exchange, 200, "application/json", container.toInspectJson() );
+                }
+            } else {
+                send( exchange, 404, "text/plain", "page not found" );
+            }
+        }
+    }
+
+    private synchronized String listJson() {
+        StringBuilder sb = new StringBuilder( "[" );
+        for ( FakeContainer container : containers.values() ) {
+            if ( sb.length() > 1 ) {
+                sb.append( ',' );
+            }
+            sb.append( container.toListJson() );
+        }
+        return sb.append( ']' ).toString();
+    }
+
+    private void streamEvents( HttpExchange exchange, long since ) throws IOException {
+        eventStreams.incrementAndGet();
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        synchronized ( this ) {
+            if ( since >= 0 ) {
+                for ( String event : history ) {
+                    if ( eventTime( event ) >= since ) {
+                        queue.add( event );
+                    }
+                }
+            }
+            subscribers.add( queue );
+        }
+        try {
+            exchange.getResponseHeaders().set( "Content-Type", "application/json" );
+            exchange.sendResponseHeaders( 200, 0 );
+            OutputStream out = exchange.getResponseBody();
+            out.flush();
+            while ( true ) {
+                String event = queue.take();
+                if ( event == CLOSE_STREAM ) {
+                    return;
+                }
+                out.write( event.getBytes( StandardCharsets.UTF_8 ) );
+                out.flush();
+            }
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscribers.remove( queue );
+        }
+    }
+
+    private static long parseSince( String query ) {
+        if ( query == null ) {
+            return -1;
+        }
+        for ( String param : query.split( "&" ) ) {
+            if ( param.startsWith( "since=" ) ) {
+                try {
+                    return Long.parseLong( param.substring( 6 ) );
+                } catch ( NumberFormatException ex ) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static long eventTime( String event ) {
+        int start = event.lastIndexOf( "\"time\":" ) + 7;
+        return Long.parseLong( event.substring( start, event.length() - 1 ) );
+    }
+
+    private static void send( HttpExchange exchange, int status, String contentType, String body ) throws IOException {
+        byte[] bytes = body.getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders().set( "Content-Type", contentType );
+        exchange.sendResponseHeaders( status, bytes.length );
+        try ( OutputStream out = exchange.getResponseBody() ) {
+            out.write( bytes );
+        }
+    }
+
+}
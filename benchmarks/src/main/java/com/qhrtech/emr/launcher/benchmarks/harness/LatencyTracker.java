@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.benchmarks.harness;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks when the effect of each event shows up in a file. Each expectation
+ * is a marker that should appear in (or disappear from) the file; when the
+ * file is next seen to satisfy it, the time since the event is recorded.
+ *
+ * @author Blake Dickie
+ */
+public class LatencyTracker {
+
+    private final String name;
+    private final File file;
+    private final Map<String, Expectation> pending = new HashMap<>();
+    private final List<Long> latencies = new ArrayList<>();
+    private int superseded;
+
+    public LatencyTracker( String name, File file ) {
+        this.name = name;
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Records that an event should make a marker appear or disappear.
+     *
+     * @param marker    the text to look for.
+     * @param present   true if the marker should appear.
+     * @param startNanos when the event was published.
+     */
+    public synchronized void expect( String marker, boolean present, long startNanos ) {
+        if ( pending.put( marker, new Expectation( present, startNanos ) ) != null ) {
+            superseded++;
+        }
+    }
+
+    /**
+     * Reads the file and records every expectation it now satisfies.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    public synchronized void fileChanged() throws IOException {
+        long now = System.nanoTime();
+        String content;
+        try {
+            content = new String( Files.readAllBytes( file.toPath() ), StandardCharsets.UTF_8 );
+        } catch ( NoSuchFileException ex ) {
+            return;
+        }
+        Iterator<Map.Entry<String, Expectation>> it = pending.entrySet().iterator();
+        while ( it.hasNext() ) {
+            Map.Entry<String, Expectation> entry = it.next();
+            if ( content.contains( entry.getKey() ) == entry.getValue().present ) {
+                latencies.add( now - entry.getValue().startNanos );
+                it.remove();
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Waits for every expectation to be satisfied.
+     *
+     * @param timeout the longest to wait, in milliseconds.
+     *
+     * @return true if nothing is pending.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized boolean awaitAll( long timeout ) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeout );
+        while ( !pending.isEmpty() ) {
+            long remaining = deadline - System.nanoTime();
+            if ( remaining <= 0 ) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait( this, remaining );
+        }
+        return true;
+    }
+
+    public synchronized String report() {
+        List<Long> sorted = new ArrayList<>( latencies );
+        Collections.sort( sorted );
+        StringBuilder sb = new StringBuilder( name );
+        sb.append( ": n=" ).append( sorted.size() );
+        if ( !sorted.isEmpty() ) {
+            sb.append( " p50=" ).append( percentile( sorted, 50 ) );
+            sb.append( " p90=" ).append( percentile( sorted, 90 ) );
+            sb.append( " p99=" ).append( percentile( sorted, 99 ) );
+            sb.append( " max=" ).append( millis( sorted.get( sorted.size() - 1 ) ) );
+        }
+        sb.append( " superseded=" ).append( superseded );
+        sb.append( " unsatisfied=" ).append( pending.size() );
+        return sb.toString();
+    }
+
+    private static String percentile( List<Long> sorted, int percentile ) {
+        int index = (int) Math.ceil( percentile / 100.0 * sorted.size() ) - 1;
+        return millis( sorted.get( Math.max( 0, index ) ) );
+    }
+
+    private static String millis( long nanos ) {
+        return String.format( "%.1fms", nanos / 1e6 );
+    }
+
+    private static class Expectation {
+
+        private final boolean present;
+        private final long startNanos;
+
+        public Expectation( boolean present, long startNanos ) {
+            this.present = present;
+            this.startNanos = startNanos;
+        }
+
+    }
+
+}
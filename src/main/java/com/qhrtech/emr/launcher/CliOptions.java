@@ -34,16 +34,99 @@ public interface CliOptions {
              description = "Takes pairs of configuration template sources and outputs seperated by a semicolon (;)" )
     public List<String> getTemplate();
 
+    @Option( longName = "templateUpdateDelay",
+             defaultValue = "5000",
+             description = "Milliseconds a compiled template is reused before checking its source for changes" )
+    public long getTemplateUpdateDelay();
+
+    @Option( longName = "fsync",
+             defaultValue = "FILE",
+             description = "How generated files are flushed before replacing the old version: NONE, FILE or DIRECTORY" )
+    public FsyncPolicy getFsyncPolicy();
+
+    @Option( longName = "deleteStale",
+             description = "Delete generated files that are no longer produced" )
+    public boolean isDeleteStale();
+
+    @Option( longName = "manifest",
+             defaultToNull = true,
+             description = "File to record the digests of generated files in, so unchanged files are not rewritten after a restart" )
+    public File getManifest();
+
     @Option( longName = "docker",
-             description = "Enable docker machine extensions for provided servers",
-             pattern = "[^\\:]+(?:\\:\\d+)?",
+             description = "Enable docker machine extensions for provided servers: host[:port] or https://host:port for TLS, tcp://host:port for plain HTTP, or unix:///var/run/docker.sock[?host=name] for the local daemon",
              defaultToNull = true )
     public List<String> getDockerHosts();
 
+    @Option( longName = "dockerResync",
+             defaultValue = "60",
+             description = "Seconds between reconciling cached containers against docker while monitoring, 0 to disable" )
+    public int getDockerResync();
+
+    @Option( longName = "dockerEventTypes",
+             defaultValue = { "container" },
+             description = "Docker event types that trigger a refresh, either container or image" )
+    public List<String> getDockerEventTypes();
+
+    @Option( longName = "dockerEvents",
+             defaultToNull = true,
+             description = "Docker event actions that trigger a refresh. Defaults to every action that changes the container cache" )
+    public List<String> getDockerEvents();
+
+    @Option( longName = "dockerEventEnv",
+             defaultValue = { "VIRTUAL_HOST" },
+             description = "Only refresh for events on containers with an environment variable starting with one of these prefixes, * for any container. Defaults to any container when templates are used" )
+    public List<String> getDockerEventEnv();
+
+    @Option( longName = "dockerReconnectMin",
+             defaultValue = "500",
+             description = "Delay in milliseconds before the first attempt to reconnect a lost docker event stream" )
+    public long getDockerReconnectMin();
+
+    @Option( longName = "dockerReconnectMax",
+             defaultValue = "30000",
+             description = "Longest delay in milliseconds between attempts to reconnect a lost docker event stream" )
+    public long getDockerReconnectMax();
+
+    @Option( longName = "dockerConnectTimeout",
+             defaultValue = "5000",
+             description = "Timeout in milliseconds for connecting to a docker host, 0 to wait forever" )
+    public int getDockerConnectTimeout();
+
+    @Option( longName = "dockerReadTimeout",
+             defaultValue = "30000",
+             description = "Timeout in milliseconds for a response from a docker host, 0 to wait forever. Does not apply to the event stream" )
+    public int getDockerReadTimeout();
+
+    @Option( longName = "dockerMaxConnections",
+             defaultValue = "64",
+             description = "Maximum concurrent requests across all docker hosts" )
+    public int getDockerMaxConnections();
+
+    @Option( longName = "dockerMaxHostConnections",
+             defaultValue = "8",
+             description = "Maximum pooled connections to each docker host" )
+    public int getDockerMaxHostConnections();
+
+    @Option( longName = "parallelism",
+             defaultValue = "4",
+             description = "Maximum concurrent container inspections per docker host, docker hosts are also queried concurrently unless set to 1" )
+    public int getParallelism();
+
     @Option( longName = "monitor",
              description = "Continuing monitoring for changes to docker" )
     public boolean isMonitor();
 
+    @Option( longName = "quietPeriod",
+             defaultValue = "250",
+             description = "Milliseconds without docker events to wait before regenerating while monitoring" )
+    public long getQuietPeriod();
+
+    @Option( longName = "maxDelay",
+             defaultValue = "2000",
+             description = "Maximum milliseconds to delay regenerating while docker events keep arriving" )
+    public long getMaxDelay();
+
     @Option( longName = "proxyFile",
              description = "Generate a pre-configured Nginx proxy.",
              defaultToNull = true )
@@ -54,6 +137,22 @@ public interface CliOptions {
              defaultToNull = true )
     public File getProxyCerts();
 
+    @Option( longName = "proxyBalance",
+             defaultValue = "round_robin",
+             pattern = "round_robin|least_conn|ip_hash",
+             description = "How proxyFile spreads requests across containers serving the same host: round_robin, least_conn or ip_hash" )
+    public String getProxyBalance();
+
+    @Option( longName = "proxyKeepalive",
+             defaultValue = "0",
+             description = "Idle connections proxyFile keeps open to the containers of each host, 0 to disable" )
+    public int getProxyKeepalive();
+
+    @Option( longName = "proxyCacheDir",
+             defaultValue = "/var/cache/nginx",
+             description = "Folder proxyFile stores response caches in for containers with PROXY_CACHE set" )
+    public File getProxyCacheDir();
+
     @Option( longName = "dockerCerts",
              description = "Folder containing HTTPS Certificate to use when connecting to docker.",
              defaultToNull = true )
@@ -70,6 +169,21 @@ public interface CliOptions {
              description = "Command to exectute after the configuration is changed" )
     public String getNotifyCommand();
 
+    @Option( longName = "notifyInterval",
+             defaultValue = "1000",
+             description = "Minimum time in milliseconds between two runs of the notify command. Changes made in between are handled by one run." )
+    public long getNotifyInterval();
+
+    @Option( longName = "notifyTimeout",
+             defaultValue = "60000",
+             description = "Time in milliseconds the notify command may run before it is killed, 0 to wait forever" )
+    public long getNotifyTimeout();
+
+    @Option( longName = "metricsPort",
+             defaultValue = "0",
+             description = "Port on the loopback address to serve metrics on in the Prometheus text format, 0 to disable" )
+    public int getMetricsPort();
+
     @Unparsed( name = "command", defaultToNull = true )
     public List<String> getCommand();
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads so background work never keeps the JVM alive
+ * after the launched command exits.
+ *
+ * @author Blake Dickie
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final String namePrefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    public DaemonThreadFactory( String namePrefix ) {
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread( Runnable r ) {
+        Thread thread = new Thread( r, namePrefix + "-" + counter.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+    }
+
+}
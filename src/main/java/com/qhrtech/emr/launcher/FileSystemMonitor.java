@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches the files that generators read and requests a refresh when they
+ * change. Each change is first given to the listeners registered for its
+ * directory, which invalidate whatever they cached about that file and decide
+ * whether it affects their output.
+ *
+ * @author Blake Dickie
+ */
+public class FileSystemMonitor {
+
+    public interface Listener {
+
+        /**
+         * Called when a file in a watched directory changes. If events were
+         * lost the watched directory itself is passed, meaning anything in it
+         * may have changed.
+         *
+         * @param file the file that changed.
+         *
+         * @return true if the change requires a refresh.
+         */
+        public boolean fileChanged( File file );
+
+        /**
+         * Called when a watched directory can no longer be watched, for
+         * example because it was deleted or its file system unmounted. No
+         * further changes are reported for it, so anything cached about the
+         * directory must be checked again on every refresh. A refresh is
+         * always requested afterwards.
+         *
+         * @param directory the directory that is no longer watched.
+         */
+        public void watchLost( File directory );
+
+    }
+
+    private final Logger log = LoggerFactory.getLogger( getClass() );
+
+    private final Runnable changeHandler;
+    private final Map<WatchKey, List<Registration>> registrations = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private boolean started = false;
+
+    public FileSystemMonitor( Runnable changeHandler ) {
+        this.changeHandler = changeHandler;
+    }
+
+    /**
+     * Starts watching a directory.
+     *
+     * @param directory the directory to watch.
+     * @param recursive true to also watch all directories below it,
+     *                  including ones created later.
+     * @param listener  the listener to notify of changes.
+     *
+     * @return true if the directory is being watched, false if watching is
+     *         not possible and the caller must not rely on change
+     *         notifications.
+     */
+    public synchronized boolean watch( File directory, boolean recursive, Listener listener ) {
+        if ( !directory.isDirectory() ) {
+            log.warn( "Unable to watch missing directory: " + directory );
+            return false;
+        }
+        try {
+            if ( watchService == null ) {
+                watchService = FileSystems.getDefault().newWatchService();
+            }
+            register( directory.toPath().toAbsolutePath(), recursive, listener );
+            return true;
+        } catch ( IOException | UnsupportedOperationException ex ) {
+            log.warn( "Unable to watch directory: " + directory, ex );
+            return false;
+        }
+    }
+
+    public synchronized void start() {
+        if ( started || watchService == null ) {
+            return;
+        }
+        started = true;
+        Thread thread = new DaemonThreadFactory( "file-monitor" ).newThread( new Runnable() {
+
+            @Override
+            public void run() {
+                runLoop();
+            }
+        } );
+        thread.start();
+    }
+
+    private void register( Path directory, final boolean recursive, final Listener listener ) throws IOException {
+        if ( !recursive ) {
+            registerDirectory( directory, false, listener );
+            return;
+        }
+        Files.walkFileTree( directory, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs ) throws IOException {
+                registerDirectory( dir, true, listener );
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+
+    private void registerDirectory( Path directory, boolean recursive, Listener listener ) throws IOException {
+        WatchKey key = directory.register( watchService,
+                                           StandardWatchEventKinds.ENTRY_CREATE,
+                                           StandardWatchEventKinds.ENTRY_DELETE,
+                                           StandardWatchEventKinds.ENTRY_MODIFY );
+        List<Registration> list = registrations.get( key );
+        if ( list == null ) {
+            list = new CopyOnWriteArrayList<>();
+            registrations.put( key, list );
+        }
+        list.add( new Registration( directory, recursive, listener ) );
+    }
+
+    private void runLoop() {
+        while ( true ) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch ( InterruptedException ex ) {
+                return;
+            }
+
+            boolean refresh = false;
+            List<Registration> list = registrations.get( key );
+            List<WatchEvent<?>> events = key.pollEvents();
+            boolean valid = key.reset();
+            if ( !valid ) {
+                registrations.remove( key );
+            }
+            if ( list == null ) {
+                continue;
+            }
+
+            for ( Registration registration : new ArrayList<>( list ) ) {
+                for ( WatchEvent<?> event : events ) {
+                    try {
+                        refresh |= dispatch( registration, event );
+                    } catch ( RuntimeException ex ) {
+                        log.warn( "Error handling change to " + registration.directory, ex );
+                        refresh = true;
+                    }
+                }
+                if ( !valid ) {
+                    log.warn( "Stopped watching directory: " + registration.directory );
+                    try {
+                        registration.listener.watchLost( registration.directory.toFile() );
+                    } catch ( RuntimeException ex ) {
+                        log.warn( "Error handling lost watch on " + registration.directory, ex );
+                    }
+                    refresh = true;
+                }
+            }
+
+            if ( refresh ) {
+                changeHandler.run();
+            }
+        }
+    }
+
+    private boolean dispatch( Registration registration, WatchEvent<?> event ) {
+        if ( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+            return registration.listener.fileChanged( registration.directory.toFile() );
+        }
+
+        Path child = registration.directory.resolve( (Path) event.context() );
+        if ( registration.recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory( child ) ) {
+            synchronized ( this ) {
+                try {
+                    register( child, true, registration.listener );
+                } catch ( IOException ex ) {
+                    log.warn( "Unable to watch new directory: " + child, ex );
+                }
+            }
+        }
+        return registration.listener.fileChanged( child.toFile() );
+    }
+
+    private static class Registration {
+
+        private final Path directory;
+        private final boolean recursive;
+        private final Listener listener;
+
+        public Registration( Path directory, boolean recursive, Listener listener ) {
+            this.directory = directory;
+            this.recursive = recursive;
+            this.listener = listener;
+        }
+
+    }
+
+}
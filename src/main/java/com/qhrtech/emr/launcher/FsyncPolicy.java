@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+/**
+ * How generated files are flushed to disk before they replace the previous
+ * version.
+ *
+ * @author Blake Dickie
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Leave flushing to the operating system.
+     */
+    NONE,
+    /**
+     * Flush each file before it is renamed into place.
+     */
+    FILE,
+    /**
+     * Flush each file and then its directory so the rename is also durable.
+     */
+    DIRECTORY
+
+}
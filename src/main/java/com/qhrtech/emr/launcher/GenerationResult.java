@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The files written and deleted by a single generation.
+ *
+ * @author Blake Dickie
+ */
+public class GenerationResult {
+
+    private final List<File> changedFiles;
+    private final List<File> deletedFiles;
+
+    public GenerationResult() {
+        changedFiles = new ArrayList<>();
+        deletedFiles = new ArrayList<>();
+    }
+
+    public List<File> getChangedFiles() {
+        return Collections.unmodifiableList( changedFiles );
+    }
+
+    public void addChangedFile( File file ) {
+        changedFiles.add( file );
+    }
+
+    public List<File> getDeletedFiles() {
+        return Collections.unmodifiableList( deletedFiles );
+    }
+
+    public void addDeletedFile( File file ) {
+        deletedFiles.add( file );
+    }
+
+    public boolean hasChanges() {
+        return !changedFiles.isEmpty() || !deletedFiles.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "changed=" + changedFiles + ", deleted=" + deletedFiles;
+    }
+
+}
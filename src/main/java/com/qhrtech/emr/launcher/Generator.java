@@ -16,8 +16,6 @@
 package com.qhrtech.emr.launcher;
 
 import com.qhrtech.emr.launcher.docker.DockerState;
-import java.io.File;
-import java.util.Map;
 
 /**
  * Generic interface that various generate templates.
@@ -26,6 +24,15 @@ import java.util.Map;
  */
 public interface Generator {
 
-    public Map<File, byte[]> generate( DockerState state ) throws Exception;
+    /**
+     * Generates files from the current docker state, streaming the content of
+     * each file to the sink rather than building it in memory.
+     *
+     * @param state the current docker state.
+     * @param sink  the sink to write the generated files to.
+     *
+     * @throws Exception if the files could not be generated.
+     */
+    public void generate( DockerState state, OutputSink sink ) throws Exception;
 
 }
@@ -15,11 +15,20 @@
  */
 package com.qhrtech.emr.launcher;
 
+import com.qhrtech.emr.launcher.docker.DockerEndpoint;
 import com.qhrtech.emr.launcher.docker.DockerInstance;
+import com.qhrtech.emr.launcher.docker.DockerTransport;
+import com.qhrtech.emr.launcher.docker.EventFilter;
 import com.qhrtech.emr.launcher.docker.NginxProxyGenerator;
+import com.qhrtech.emr.launcher.metrics.MetricsHttpServer;
+import com.qhrtech.emr.launcher.metrics.MetricsRegistry;
 import com.lexicalscope.jewel.cli.Cli;
 import com.lexicalscope.jewel.cli.CliFactory;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -32,8 +41,8 @@ public class Launcher {
         Cli<CliOptions> cli = CliFactory.createCli( CliOptions.class );
         CliOptions options = cli.parseArguments( args );
 
-        if ( options.getDockerHosts() == null && options.isMonitor() ) {
-            System.err.println( "-monitor can only be used when combined with -docker." );
+        if ( options.getDockerHosts() == null && options.getTemplate() == null && options.isMonitor() ) {
+            System.err.println( "-monitor can only be used when combined with -docker or -template." );
             System.exit( 1 );
         }
         if ( options.getDockerHosts() == null && options.getProxyFile() != null ) {
@@ -41,21 +50,54 @@ public class Launcher {
             System.exit( 1 );
         }
 
+        MetricsRegistry.getInstance().registerMBean();
+        if ( options.getMetricsPort() > 0 ) {
+            new MetricsHttpServer( MetricsRegistry.getInstance(), options.getMetricsPort() ).start();
+        }
+
         TemplateLauncherManager manager = TemplateLauncherManager.getInstance();
+        manager.setParallelism( options.getParallelism() );
+        manager.setFsyncPolicy( options.getFsyncPolicy() );
+        manager.setDeleteStaleFiles( options.isDeleteStale() );
+        manager.setManifestFile( options.getManifest() );
 
         if ( options.getDockerHosts() != null ) {
+            List<String> eventEnv = splitValues( options.getDockerEventEnv() );
+            if ( options.getTemplate() != null && eventEnv.equals( EventFilter.DEFAULT_ENV_PREFIXES ) ) {
+                // Templates can read any container, not just proxied ones.
+                eventEnv = Arrays.asList( EventFilter.ANY_CONTAINER );
+            }
+            List<String> eventActions = EventFilter.DEFAULT_ACTIONS;
+            if ( options.getDockerEvents() != null ) {
+                eventActions = splitValues( options.getDockerEvents() );
+            }
+            EventFilter eventFilter = new EventFilter( splitValues( options.getDockerEventTypes() ),
+                                                       eventActions,
+                                                       eventEnv );
+            DockerTransport transport = new DockerTransport( options.getDockerMaxConnections() );
+            transport.setConnectTimeout( options.getDockerConnectTimeout() );
+            transport.setReadTimeout( options.getDockerReadTimeout() );
+            transport.setMaxConnectionsPerHost( options.getDockerMaxHostConnections() );
             for ( String hostArg : options.getDockerHosts() ) {
                 for ( String host : hostArg.split( "," ) ) {
                     host = host.trim();
                     if ( host.isEmpty() ) {
                         continue;
                     }
-                    if ( host.contains( ":" ) ) {
-                        String[] parts = host.split( "\\:", 2 );
-                        manager.addDockerInstance( new DockerInstance( parts[0], Integer.parseInt( parts[1] ), options.getDockerCerts() ) );
-                    } else {
-                        manager.addDockerInstance( new DockerInstance( host, options.getDockerCerts() ) );
+                    DockerEndpoint endpoint;
+                    try {
+                        endpoint = DockerEndpoint.parse( host );
+                    } catch ( IllegalArgumentException ex ) {
+                        System.err.println( ex.getMessage() );
+                        System.exit( 1 );
+                        return;
                     }
+                    DockerInstance instance = new DockerInstance( endpoint, options.getDockerCerts(), transport );
+                    instance.setResyncInterval( TimeUnit.SECONDS.toMillis( options.getDockerResync() ) );
+                    instance.setInspectParallelism( options.getParallelism() );
+                    instance.setEventFilter( eventFilter );
+                    instance.setReconnectDelay( options.getDockerReconnectMin(), options.getDockerReconnectMax() );
+                    manager.addDockerInstance( instance );
                 }
             }
         }
@@ -63,7 +105,9 @@ public class Launcher {
         if ( options.getTemplate() != null ) {
             for ( String templatePair : options.getTemplate() ) {
                 String[] pair = templatePair.split( ";", 2 );
-                manager.addGenerator( new TemplateProcessor( new File( pair[0] ), new File( pair[1] ) ) );
+                TemplateProcessor processor = new TemplateProcessor( new File( pair[0] ), new File( pair[1] ) );
+                processor.setUpdateDelay( options.getTemplateUpdateDelay() );
+                manager.addGenerator( processor );
 //                TemplateProcessor processor = new TemplateProcessor();
 //                processor.generateConfigs( new File( pair[0] ), new File( pair[1] ) );
             }
@@ -71,17 +115,39 @@ public class Launcher {
 
         if ( options.getProxyFile() != null ) {
             NginxProxyGenerator gen = new NginxProxyGenerator( options.getProxyFile(), options.getProxyCerts(), options.getProxyConfs() );
+            gen.setBalanceMethod( options.getProxyBalance() );
+            gen.setKeepalive( options.getProxyKeepalive() );
+            gen.setCacheDir( options.getProxyCacheDir() );
             manager.addGenerator( gen );
         }
 
         manager.setLaunchCommand( options.getCommand() );
         manager.setNotifyCommand( options.getNotifyCommand() );
+        if ( manager.getNotifyRunner() != null ) {
+            manager.getNotifyRunner().setMinInterval( options.getNotifyInterval() );
+            manager.getNotifyRunner().setTimeout( options.getNotifyTimeout() );
+        }
 
         if ( options.isMonitor() ) {
+            manager.getRefreshScheduler().setQuietPeriod( options.getQuietPeriod() );
+            manager.getRefreshScheduler().setMaxDelay( options.getMaxDelay() );
             manager.startMonitoring();
         }
 
         manager.startUp();
 
     }
+
+    private static List<String> splitValues( List<String> args ) {
+        List<String> result = new ArrayList<>();
+        for ( String arg : args ) {
+            for ( String value : arg.split( "," ) ) {
+                value = value.trim();
+                if ( !value.isEmpty() ) {
+                    result.add( value );
+                }
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+import com.qhrtech.emr.launcher.metrics.Counter;
+import com.qhrtech.emr.launcher.metrics.Gauge;
+import com.qhrtech.emr.launcher.metrics.Histogram;
+import com.qhrtech.emr.launcher.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the notify command in the background. Only one notify runs at a time,
+ * runs are spaced at least the minimum interval apart, and any number of
+ * requests made while a run is pending or in progress result in one more
+ * run.
+ *
+ * @author Blake Dickie
+ */
+public class NotifyRunner {
+
+    public static final long DEFAULT_MIN_INTERVAL = 1000;
+    public static final long DEFAULT_TIMEOUT = 60000;
+
+    private final Logger log = LoggerFactory.getLogger( getClass() );
+
+    private final String command;
+    private final ScheduledExecutorService notifyExecutor;
+    private final ScheduledExecutorService watchdogExecutor;
+    private final Object lock = new Object();
+
+    private long minInterval = DEFAULT_MIN_INTERVAL;
+    private long timeout = DEFAULT_TIMEOUT;
+    private boolean scheduled = false;
+    private boolean hasRun = false;
+    private long lastStart = 0;
+
+    private final Counter runs;
+    private final Counter failures;
+    private final Counter timeouts;
+    private final Histogram duration;
+    private volatile int lastExitCode = 0;
+    private volatile long lastDuration = 0;
+
+    public NotifyRunner( String command ) {
+        this.command = command;
+        notifyExecutor = Executors.newSingleThreadScheduledExecutor( new DaemonThreadFactory( "notify" ) );
+        watchdogExecutor = Executors.newSingleThreadScheduledExecutor( new DaemonThreadFactory( "notify-watchdog" ) );
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        runs = metrics.counter( "launcher_notify_runs_total", "Runs of the notify command." );
+        failures = metrics.counter( "launcher_notify_failures_total", "Runs of the notify command that failed, timed out or exited with a non-zero status." );
+        timeouts = metrics.counter( "launcher_notify_timeouts_total", "Runs of the notify command that were killed for taking too long." );
+        duration = metrics.timer( "launcher_notify_duration_seconds", "Time taken by the notify command." );
+        metrics.replace( new Gauge( "launcher_notify_last_exit_status", "Exit status of the last run of the notify command." ) {
+
+            @Override
+            public long getValue() {
+                return lastExitCode;
+            }
+        } );
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    /**
+     * Sets the minimum time between the start of two notify runs.
+     *
+     * @param minInterval the interval in milliseconds.
+     */
+    public void setMinInterval( long minInterval ) {
+        this.minInterval = Math.max( 0, minInterval );
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets how long the notify command may run before it is killed.
+     *
+     * @param timeout the timeout in milliseconds, 0 to wait forever.
+     */
+    public void setTimeout( long timeout ) {
+        this.timeout = Math.max( 0, timeout );
+    }
+
+    public long getRuns() {
+        return runs.getCount();
+    }
+
+    public long getFailures() {
+        return failures.getCount();
+    }
+
+    public long getTimeouts() {
+        return timeouts.getCount();
+    }
+
+    public int getLastExitCode() {
+        return lastExitCode;
+    }
+
+    /**
+     * @return how long the last notify run took, in milliseconds.
+     */
+    public long getLastDuration() {
+        return lastDuration;
+    }
+
+    /**
+     * Requests a notify run. Returns immediately.
+     */
+    public void requestNotify() {
+        synchronized ( lock ) {
+            if ( scheduled ) {
+                return;
+            }
+            scheduled = true;
+            long delay = 0;
+            if ( hasRun ) {
+                delay = Math.max( 0, lastStart + TimeUnit.MILLISECONDS.toNanos( minInterval ) - System.nanoTime() );
+            }
+            notifyExecutor.schedule( new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized ( lock ) {
+                        scheduled = false;
+                        hasRun = true;
+                        lastStart = System.nanoTime();
+                    }
+                    runCommand();
+                }
+            }, delay, TimeUnit.NANOSECONDS );
+        }
+    }
+
+    private void runCommand() {
+        runs.increment();
+        long start = System.nanoTime();
+        try {
+            ProcessBuilder pb = new ProcessBuilder( command );
+            pb.redirectError( ProcessBuilder.Redirect.INHERIT );
+            pb.redirectOutput( ProcessBuilder.Redirect.INHERIT );
+            final Process process = pb.start();
+
+            final AtomicBoolean timedOut = new AtomicBoolean( false );
+            ScheduledFuture<?> watchdog = null;
+            if ( timeout > 0 ) {
+                watchdog = watchdogExecutor.schedule( new Runnable() {
+
+                    @Override
+                    public void run() {
+                        timedOut.set( true );
+                        process.destroy();
+                    }
+                }, timeout, TimeUnit.MILLISECONDS );
+            }
+
+            int exitCode = process.waitFor();
+            if ( watchdog != null ) {
+                watchdog.cancel( false );
+            }
+            lastExitCode = exitCode;
+
+            if ( timedOut.get() ) {
+                timeouts.increment();
+                failures.increment();
+                log.error( "Notify command timed out after " + timeout + "ms and was killed: " + command );
+            } else if ( exitCode != 0 ) {
+                failures.increment();
+                log.error( "Notify command exited with status " + exitCode + ": " + command );
+            }
+        } catch ( IOException ex ) {
+            lastExitCode = -1;
+            failures.increment();
+            log.error( "Error running notify command: " + command, ex );
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            duration.record( elapsed );
+            lastDuration = TimeUnit.NANOSECONDS.toMillis( elapsed );
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Records the SHA-256 digest, length and modification time of every generated
+ * file, so the next generation can tell which files changed without keeping
+ * their content.
+ *
+ * The manifest is stored as one line per file: the hex digest, the length,
+ * the modification time in milliseconds and the absolute path, separated by
+ * spaces. Lines without a modification time, written by older versions, are
+ * still read; those files are digested again on their next check.
+ *
+ * @author Blake Dickie
+ */
+public class OutputManifest {
+
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final Pattern MODIFIED_PATTERN = Pattern.compile( "[0-9]+" );
+
+    private final Map<File, Entry> entries;
+
+    public OutputManifest() {
+        entries = new HashMap<>();
+    }
+
+    public static OutputManifest load( File file ) throws IOException {
+        OutputManifest manifest = new OutputManifest();
+        for ( String line : Files.readAllLines( file.toPath(), StandardCharsets.UTF_8 ) ) {
+            String[] parts = line.split( " ", 3 );
+            if ( parts.length != 3 ) {
+                continue;
+            }
+            Entry entry = new Entry( fromHex( parts[0] ), Long.parseLong( parts[1] ) );
+            String path = parts[2];
+            int space = path.indexOf( ' ' );
+            if ( space > 0 && MODIFIED_PATTERN.matcher( path.substring( 0, space ) ).matches() ) {
+                entry = entry.withLastModified( Long.parseLong( path.substring( 0, space ) ) );
+                path = path.substring( space + 1 );
+            }
+            manifest.put( new File( path ), entry );
+        }
+        return manifest;
+    }
+
+    public void save( File file, OutputWriter writer ) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try ( PrintWriter out = new PrintWriter( new OutputStreamWriter( bout, StandardCharsets.UTF_8 ) ) ) {
+            for ( Map.Entry<File, Entry> entry : new TreeMap<>( entries ).entrySet() ) {
+                out.print( toHex( entry.getValue().getDigest() ) );
+                out.print( ' ' );
+                out.print( entry.getValue().getLength() );
+                out.print( ' ' );
+                out.print( entry.getValue().getLastModified() );
+                out.print( ' ' );
+                out.println( entry.getKey().getAbsolutePath() );
+            }
+        }
+        writer.write( file, bout.toByteArray() );
+    }
+
+    public Entry get( File file ) {
+        return entries.get( file.getAbsoluteFile() );
+    }
+
+    public void put( File file, Entry entry ) {
+        entries.put( file.getAbsoluteFile(), entry );
+    }
+
+    public boolean contains( File file ) {
+        return entries.containsKey( file.getAbsoluteFile() );
+    }
+
+    public Set<File> getFiles() {
+        return Collections.unmodifiableSet( entries.keySet() );
+    }
+
+    /**
+     * Checks whether a file on disk still matches a recorded entry. The
+     * recorded digest is only trusted while the file keeps the modification
+     * time recorded with it. Otherwise the file was changed by something
+     * else, or has no usable entry, and it is read and digested again.
+     *
+     * @param file  the file to check.
+     * @param entry the entry for the newly generated content.
+     *
+     * @return true if the file already has the new content.
+     *
+     * @throws IOException if the existing file could not be read.
+     */
+    public boolean isCurrent( File file, Entry entry ) throws IOException {
+        if ( !file.isFile() || file.length() != entry.getLength() ) {
+            return false;
+        }
+        Entry current = get( file );
+        if ( current == null || current.getLastModified() == 0 || current.getLastModified() != file.lastModified() ) {
+            try ( InputStream in = Files.newInputStream( file.toPath() ) ) {
+                current = Entry.of( in );
+            }
+        }
+        return entry.hasSameContent( current );
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        return obj instanceof OutputManifest && entries.equals( ( (OutputManifest) obj ).entries );
+    }
+
+    @Override
+    public int hashCode() {
+        return entries.hashCode();
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance( DIGEST_ALGORITHM );
+        } catch ( NoSuchAlgorithmException ex ) {
+            throw new IllegalStateException( "Missing required digest algorithm.", ex );
+        }
+    }
+
+    private static String toHex( byte[] bytes ) {
+        StringBuilder sb = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes ) {
+            sb.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) );
+            sb.append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return sb.toString();
+    }
+
+    private static byte[] fromHex( String hex ) {
+        byte[] result = new byte[hex.length() / 2];
+        for ( int i = 0; i < result.length; i++ ) {
+            result[i] = (byte) Integer.parseInt( hex.substring( i * 2, i * 2 + 2 ), 16 );
+        }
+        return result;
+    }
+
+    /**
+     * The digest, length and modification time of a single file. A
+     * modification time of 0 means it is not known.
+     */
+    public static class Entry {
+
+        private final byte[] digest;
+        private final long length;
+        private final long lastModified;
+
+        public Entry( byte[] digest, long length ) {
+            this( digest, length, 0 );
+        }
+
+        public Entry( byte[] digest, long length, long lastModified ) {
+            this.digest = digest;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        public static Entry of( byte[] content ) {
+            return new Entry( newDigest().digest( content ), content.length );
+        }
+
+        public static Entry of( InputStream in ) throws IOException {
+            MessageDigest md = newDigest();
+            byte[] buffer = new byte[8192];
+            long length = 0;
+            int read;
+            while ( ( read = in.read( buffer ) ) >= 0 ) {
+                md.update( buffer, 0, read );
+                length += read;
+            }
+            return new Entry( md.digest(), length );
+        }
+
+        public byte[] getDigest() {
+            return digest.clone();
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public Entry withLastModified( long lastModified ) {
+            return new Entry( digest, length, lastModified );
+        }
+
+        /**
+         * Checks whether two entries describe the same content, whatever
+         * their modification times.
+         *
+         * @param other the entry to compare with.
+         *
+         * @return true if the digest and length match.
+         */
+        public boolean hasSameContent( Entry other ) {
+            return other != null && length == other.length && Arrays.equals( digest, other.digest );
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( !( obj instanceof Entry ) ) {
+                return false;
+            }
+            Entry other = (Entry) obj;
+            return hasSameContent( other ) && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode( digest );
+        }
+
+    }
+
+}
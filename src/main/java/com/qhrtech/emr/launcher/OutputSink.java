@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Receives the content of generated files as it is produced.
+ *
+ * @author Blake Dickie
+ */
+public interface OutputSink {
+
+    /**
+     * Opens a stream for the content of a generated file. The content is
+     * complete once the stream is closed. Implementations must allow several
+     * files to be written concurrently.
+     *
+     * @param file the file being generated.
+     *
+     * @return the stream to write the content to.
+     *
+     * @throws IOException if the stream could not be opened.
+     */
+    public OutputStream open( File file ) throws IOException;
+
+}
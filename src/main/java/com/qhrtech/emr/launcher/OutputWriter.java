@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Replaces generated files atomically. Content is written to a temporary file
+ * in the same directory, flushed according to the fsync policy, and then
+ * renamed over the target so readers only ever see a complete file.
+ *
+ * @author Blake Dickie
+ */
+public class OutputWriter {
+
+    private static final Set<PosixFilePermission> DEFAULT_PERMISSIONS = PosixFilePermissions.fromString( "rw-r--r--" );
+
+    private final FsyncPolicy fsyncPolicy;
+
+    public OutputWriter( FsyncPolicy fsyncPolicy ) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public void write( File target, byte[] content ) throws IOException {
+        Path temp = createTempFile( target );
+        try {
+            try ( FileChannel channel = FileChannel.open( temp, StandardOpenOption.WRITE ) ) {
+                ByteBuffer buffer = ByteBuffer.wrap( content );
+                while ( buffer.hasRemaining() ) {
+                    channel.write( buffer );
+                }
+            }
+            commit( temp, target );
+        } finally {
+            Files.deleteIfExists( temp );
+        }
+    }
+
+    /**
+     * Creates an empty temporary file next to a target, creating the target
+     * directory if needed.
+     *
+     * @param target the file that will eventually be replaced.
+     *
+     * @return the temporary file.
+     *
+     * @throws IOException if the file could not be created.
+     */
+    public Path createTempFile( File target ) throws IOException {
+        Path path = target.getAbsoluteFile().toPath();
+        Path directory = path.getParent();
+        Files.createDirectories( directory );
+        return Files.createTempFile( directory, "." + path.getFileName(), ".tmp" );
+    }
+
+    /**
+     * Flushes a temporary file created by {@link #createTempFile(File)} and
+     * renames it over its target.
+     *
+     * @param temp   the completed temporary file.
+     * @param target the file to replace.
+     *
+     * @throws IOException if the file could not be replaced.
+     */
+    public void commit( Path temp, File target ) throws IOException {
+        Path path = target.getAbsoluteFile().toPath();
+        if ( fsyncPolicy != FsyncPolicy.NONE ) {
+            try ( FileChannel channel = FileChannel.open( temp, StandardOpenOption.WRITE ) ) {
+                channel.force( true );
+            }
+        }
+        copyPermissions( path, temp );
+        Files.move( temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+        if ( fsyncPolicy == FsyncPolicy.DIRECTORY ) {
+            syncDirectory( path.getParent() );
+        }
+    }
+
+    public void delete( File target ) throws IOException {
+        Path path = target.getAbsoluteFile().toPath();
+        if ( Files.deleteIfExists( path ) && fsyncPolicy == FsyncPolicy.DIRECTORY ) {
+            syncDirectory( path.getParent() );
+        }
+    }
+
+    /**
+     * Temporary files are created private to the owner, so give the
+     * replacement the permissions of the file it replaces, or the usual
+     * permissions of a new file.
+     */
+    private void copyPermissions( Path target, Path temp ) throws IOException {
+        PosixFileAttributeView tempView = Files.getFileAttributeView( temp, PosixFileAttributeView.class );
+        if ( tempView == null ) {
+            return;
+        }
+        if ( Files.exists( target ) ) {
+            tempView.setPermissions( Files.getFileAttributeView( target, PosixFileAttributeView.class ).readAttributes().permissions() );
+        } else {
+            tempView.setPermissions( DEFAULT_PERMISSIONS );
+        }
+    }
+
+    private void syncDirectory( Path directory ) {
+        try ( FileChannel channel = FileChannel.open( directory, StandardOpenOption.READ ) ) {
+            channel.force( true );
+        } catch ( IOException ignore ) {
+            // Not every platform allows a directory to be opened for syncing.
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+import com.qhrtech.emr.launcher.metrics.Counter;
+import com.qhrtech.emr.launcher.metrics.Histogram;
+import com.qhrtech.emr.launcher.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces bursts of change events into a single refresh. A refresh runs once
+ * no events have arrived for the quiet period, or once the maximum delay has
+ * passed since the first pending event, whichever comes first.
+ *
+ * @author Blake Dickie
+ */
+public class RefreshScheduler {
+
+    public static final long DEFAULT_QUIET_PERIOD = 250;
+    public static final long DEFAULT_MAX_DELAY = 2000;
+
+    private final Logger log = LoggerFactory.getLogger( getClass() );
+
+    private final Runnable refreshTask;
+    private final Object lock = new Object();
+    private final Counter eventsReceived;
+    private final Counter generationsRun;
+    private final Counter eventsCoalesced;
+    private final Histogram refreshDelay;
+
+    private long quietPeriod = DEFAULT_QUIET_PERIOD;
+    private long maxDelay = DEFAULT_MAX_DELAY;
+    private boolean ready = false;
+    private boolean started = false;
+    private int pendingEvents = 0;
+    private long firstEventTime;
+    private long lastEventTime;
+
+    public RefreshScheduler( Runnable refreshTask ) {
+        this.refreshTask = refreshTask;
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        eventsReceived = metrics.counter( "launcher_refresh_events_total", "Refresh requests received." );
+        generationsRun = metrics.counter( "launcher_refresh_runs_total", "Refreshes run." );
+        eventsCoalesced = metrics.counter( "launcher_refresh_coalesced_total", "Refresh requests handled by a refresh that was already pending." );
+        refreshDelay = metrics.timer( "launcher_refresh_delay_seconds", "Time from the first pending refresh request to the start of the refresh." );
+    }
+
+    public long getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    /**
+     * Sets how long there must be no events before a refresh is run.
+     *
+     * @param quietPeriod the quiet period in milliseconds.
+     */
+    public void setQuietPeriod( long quietPeriod ) {
+        synchronized ( lock ) {
+            this.quietPeriod = Math.max( 0, quietPeriod );
+            lock.notifyAll();
+        }
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Sets the longest a pending event will wait for a refresh, even if
+     * events keep arriving.
+     *
+     * @param maxDelay the maximum delay in milliseconds.
+     */
+    public void setMaxDelay( long maxDelay ) {
+        synchronized ( lock ) {
+            this.maxDelay = Math.max( 0, maxDelay );
+            lock.notifyAll();
+        }
+    }
+
+    public long getEventsReceived() {
+        return eventsReceived.getCount();
+    }
+
+    public long getGenerationsRun() {
+        return generationsRun.getCount();
+    }
+
+    public void start() {
+        synchronized ( lock ) {
+            if ( started ) {
+                return;
+            }
+            started = true;
+        }
+        Thread thread = new Thread( new Runnable() {
+
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "refresh-scheduler" );
+        thread.start();
+    }
+
+    /**
+     * Allows refreshes to run. Events received before this are held until it
+     * is called.
+     */
+    public void setReady() {
+        synchronized ( lock ) {
+            ready = true;
+            lock.notifyAll();
+        }
+    }
+
+    public void eventReceived() {
+        eventsReceived.increment();
+        synchronized ( lock ) {
+            long now = System.nanoTime();
+            if ( pendingEvents == 0 ) {
+                firstEventTime = now;
+            }
+            pendingEvents++;
+            lastEventTime = now;
+            lock.notifyAll();
+        }
+    }
+
+    private void runLoop() {
+        while ( true ) {
+            int coalesced;
+            try {
+                coalesced = awaitRefresh();
+            } catch ( InterruptedException ex ) {
+                return;
+            }
+
+            generationsRun.increment();
+            eventsCoalesced.add( coalesced - 1 );
+            if ( log.isDebugEnabled() ) {
+                log.debug( "Refreshing after " + coalesced + " events (" + eventsReceived.getCount() + " events, " + generationsRun.getCount() + " generations total)." );
+            }
+            refreshTask.run();
+        }
+    }
+
+    private int awaitRefresh() throws InterruptedException {
+        synchronized ( lock ) {
+            while ( true ) {
+                if ( ready && pendingEvents > 0 ) {
+                    long deadline = Math.min( lastEventTime + TimeUnit.MILLISECONDS.toNanos( quietPeriod ),
+                                              firstEventTime + TimeUnit.MILLISECONDS.toNanos( maxDelay ) );
+                    long remaining = deadline - System.nanoTime();
+                    if ( remaining <= 0 ) {
+                        refreshDelay.recordSince( firstEventTime );
+                        int coalesced = pendingEvents;
+                        pendingEvents = 0;
+                        return coalesced;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait( lock, remaining );
+                } else {
+                    lock.wait();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+import org.slf4j.LoggerFactory;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Output sink used for a single generation. Each file is digested while it is
+ * streamed and compared with the previous manifest when it is closed. Content
+ * is buffered in memory until it passes the spill threshold and then moves to
+ * a temporary file next to its target. Unchanged files are discarded, changed
+ * files stay staged until {@link #commit()} renames them into place, so a
+ * failed generation never replaces anything.
+ *
+ * @author Blake Dickie
+ */
+public class StagingOutputSink implements OutputSink {
+
+    public static final int SPILL_THRESHOLD = 64 * 1024;
+
+    private final OutputManifest previous;
+    private final OutputWriter writer;
+    private final OutputManifest manifest;
+    private final Map<File, Path> staged;
+
+    public StagingOutputSink( OutputManifest previous, OutputWriter writer ) {
+        this.previous = previous;
+        this.writer = writer;
+        manifest = new OutputManifest();
+        staged = new HashMap<>();
+    }
+
+    @Override
+    public OutputStream open( File file ) throws IOException {
+        return new StagedOutputStream( file.getAbsoluteFile() );
+    }
+
+    /**
+     * Gets the manifest of every file closed so far, changed or not.
+     *
+     * @return the new manifest.
+     */
+    public OutputManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Renames every changed file into place.
+     *
+     * @return the files that were replaced, in path order.
+     *
+     * @throws IOException if a file could not be replaced.
+     */
+    public synchronized List<File> commit() throws IOException {
+        List<File> committed = new ArrayList<>();
+        for ( Map.Entry<File, Path> entry : new TreeMap<>( staged ).entrySet() ) {
+            File file = entry.getKey();
+            writer.commit( entry.getValue(), file );
+            staged.remove( file );
+            manifest.put( file, manifest.get( file ).withLastModified( file.lastModified() ) );
+            committed.add( file );
+        }
+        return committed;
+    }
+
+    /**
+     * Deletes any staged files that were not committed.
+     */
+    public synchronized void discard() {
+        for ( Path temp : staged.values() ) {
+            deleteQuietly( temp );
+        }
+        staged.clear();
+    }
+
+    private synchronized void finish( File file, OutputManifest.Entry entry, Path temp ) {
+        manifest.put( file, entry );
+        Path replaced = temp == null ? staged.remove( file ) : staged.put( file, temp );
+        if ( replaced != null ) {
+            deleteQuietly( replaced );
+        }
+    }
+
+    private static void deleteQuietly( Path temp ) {
+        try {
+            Files.deleteIfExists( temp );
+        } catch ( IOException ex ) {
+            LoggerFactory.getLogger( StagingOutputSink.class ).warn( "Unable to delete temporary file: " + temp, ex );
+        }
+    }
+
+    private class StagedOutputStream extends OutputStream {
+
+        private final File file;
+        private final MessageDigest digest;
+        private ByteArrayOutputStream buffer;
+        private Path temp;
+        private OutputStream tempOut;
+        private long length;
+        private boolean closed;
+
+        public StagedOutputStream( File file ) {
+            this.file = file;
+            digest = OutputManifest.newDigest();
+            buffer = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void write( int b ) throws IOException {
+            digest.update( (byte) b );
+            length++;
+            if ( tempOut == null && buffer.size() + 1 > SPILL_THRESHOLD ) {
+                spill();
+            }
+            current().write( b );
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) throws IOException {
+            digest.update( b, off, len );
+            length += len;
+            if ( tempOut == null && buffer.size() + len > SPILL_THRESHOLD ) {
+                spill();
+            }
+            current().write( b, off, len );
+        }
+
+        private OutputStream current() {
+            return tempOut != null ? tempOut : buffer;
+        }
+
+        private void spill() throws IOException {
+            Path spillFile = writer.createTempFile( file );
+            try {
+                OutputStream out = new BufferedOutputStream( Files.newOutputStream( spillFile ) );
+                buffer.writeTo( out );
+                temp = spillFile;
+                tempOut = out;
+                buffer = null;
+            } catch ( IOException ex ) {
+                deleteQuietly( spillFile );
+                throw ex;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+
+            try {
+                if ( tempOut != null ) {
+                    tempOut.close();
+                }
+
+                OutputManifest.Entry entry = new OutputManifest.Entry( digest.digest(), length );
+                // Read before the check, so a change made during it is
+                // caught on the next generation.
+                long lastModified = file.lastModified();
+                if ( previous.isCurrent( file, entry ) ) {
+                    if ( temp != null ) {
+                        deleteQuietly( temp );
+                    }
+                    finish( file, entry.withLastModified( lastModified ), null );
+                    return;
+                }
+
+                if ( temp == null ) {
+                    temp = writer.createTempFile( file );
+                    try ( OutputStream out = Files.newOutputStream( temp ) ) {
+                        buffer.writeTo( out );
+                    }
+                }
+                finish( file, entry, temp );
+            } catch ( IOException | RuntimeException ex ) {
+                if ( temp != null ) {
+                    deleteQuietly( temp );
+                }
+                throw ex;
+            } finally {
+                buffer = null;
+            }
+        }
+
+    }
+
+}
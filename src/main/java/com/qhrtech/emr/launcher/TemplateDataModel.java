@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+import com.qhrtech.emr.launcher.docker.DockerState;
+import freemarker.template.ObjectWrapper;
+import freemarker.template.SimpleCollection;
+import freemarker.template.TemplateCollectionModel;
+import freemarker.template.TemplateHashModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The read-only data model templates are rendered with. Nothing is looked up
+ * or wrapped until a template asks for it, and each value is wrapped once and
+ * reused by every template rendered from the same model, so a template that
+ * only reads env never pays for the docker indexes.
+ *
+ * The model has these keys:
+ * <ul>
+ * <li>env: the launcher's environment variables</li>
+ * <li>docker: the docker state</li>
+ * <li>containers: every container</li>
+ * <li>containersByVirtualHost, containersByEnv, containersByDockerHost and
+ * containersByExposedPort: the containers grouped by each key, so templates
+ * can look them up instead of looping over every container</li>
+ * </ul>
+ *
+ * @author Blake Dickie
+ */
+public class TemplateDataModel implements TemplateHashModelEx {
+
+    public static final String ENV = "env";
+    public static final String DOCKER = "docker";
+    public static final String CONTAINERS = "containers";
+    public static final String CONTAINERS_BY_VIRTUAL_HOST = "containersByVirtualHost";
+    public static final String CONTAINERS_BY_ENV = "containersByEnv";
+    public static final String CONTAINERS_BY_DOCKER_HOST = "containersByDockerHost";
+    public static final String CONTAINERS_BY_EXPOSED_PORT = "containersByExposedPort";
+
+    private static final List<String> KEYS = Collections.unmodifiableList( Arrays.asList(
+            ENV, DOCKER, CONTAINERS, CONTAINERS_BY_VIRTUAL_HOST, CONTAINERS_BY_ENV, CONTAINERS_BY_DOCKER_HOST, CONTAINERS_BY_EXPOSED_PORT ) );
+
+    private final DockerState state;
+    private final ObjectWrapper wrapper;
+    private final ConcurrentMap<String, TemplateModel> wrapped = new ConcurrentHashMap<>();
+
+    /**
+     * @param state   the docker state, or null if there is none.
+     * @param wrapper the wrapper to wrap values with.
+     */
+    public TemplateDataModel( DockerState state, ObjectWrapper wrapper ) {
+        this.state = state != null ? state : new DockerState();
+        this.wrapper = wrapper;
+    }
+
+    /**
+     * Checks whether this model can be reused for a render.
+     *
+     * @param state   the docker state of the render.
+     * @param wrapper the object wrapper of the render.
+     *
+     * @return true if this model was built from the same state and wrapper.
+     */
+    public boolean isFor( DockerState state, ObjectWrapper wrapper ) {
+        return this.state == state && this.wrapper == wrapper;
+    }
+
+    @Override
+    public TemplateModel get( String key ) throws TemplateModelException {
+        TemplateModel model = wrapped.get( key );
+        if ( model != null ) {
+            return model;
+        }
+        Object value = resolve( key );
+        if ( value == null ) {
+            return null;
+        }
+        model = wrapper.wrap( value );
+        TemplateModel existing = wrapped.putIfAbsent( key, model );
+        return existing != null ? existing : model;
+    }
+
+    private Object resolve( String key ) {
+        switch ( key ) {
+            case ENV:
+                return System.getenv();
+            case DOCKER:
+                return state;
+            case CONTAINERS:
+                return state.getContainers();
+            case CONTAINERS_BY_VIRTUAL_HOST:
+                return state.getContainersByVirtualHost();
+            case CONTAINERS_BY_ENV:
+                return state.getContainersByEnv();
+            case CONTAINERS_BY_DOCKER_HOST:
+                return state.getContainersByDockerHost();
+            case CONTAINERS_BY_EXPOSED_PORT:
+                return state.getContainersByExposedPort();
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return KEYS.size();
+    }
+
+    @Override
+    public TemplateCollectionModel keys() {
+        return new SimpleCollection( KEYS, wrapper );
+    }
+
+    @Override
+    public TemplateCollectionModel values() throws TemplateModelException {
+        List<TemplateModel> values = new ArrayList<>();
+        for ( String key : KEYS ) {
+            values.add( get( key ) );
+        }
+        return new SimpleCollection( values, wrapper );
+    }
+
+}
@@ -15,17 +15,22 @@
  */
 package com.qhrtech.emr.launcher;
 
+import com.qhrtech.emr.launcher.docker.DockerContainer;
 import com.qhrtech.emr.launcher.docker.DockerInstance;
 import com.qhrtech.emr.launcher.docker.DockerState;
-import org.apache.commons.io.FileUtils;
+import com.qhrtech.emr.launcher.metrics.Counter;
+import com.qhrtech.emr.launcher.metrics.Histogram;
+import com.qhrtech.emr.launcher.metrics.MetricsRegistry;
 import org.slf4j.LoggerFactory;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
@@ -40,17 +45,51 @@ public class TemplateLauncherManager {
     }
 
     private final List<Generator> generators;
+    private final List<Histogram> renderTimes;
     private final List<DockerInstance> instances;
 
     private List<String> launchCommand;
-    private String notifyCommand;
+    private NotifyRunner notifyRunner;
+    private int parallelism = 1;
+    private OutputWriter outputWriter = new OutputWriter( FsyncPolicy.FILE );
+    private boolean deleteStaleFiles = false;
+    private File manifestFile;
+    private ExecutorService collectExecutor;
+
+    private final RefreshScheduler refreshScheduler;
+
+    private final Histogram collectTime;
+    private final Histogram generationTime;
+    private final Counter filesChanged;
+    private final Counter filesDeleted;
+    private final Counter bytesWritten;
+    private final Counter generationFailures;
 
     private TemplateLauncherManager() {
         generators = new ArrayList<>();
+        renderTimes = new ArrayList<>();
         instances = new ArrayList<>();
+        refreshScheduler = new RefreshScheduler( new Runnable() {
+
+            @Override
+            public void run() {
+                doRefresh();
+            }
+        } );
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        collectTime = metrics.timer( "launcher_collect_seconds", "Time taken to collect the containers from every docker host." );
+        generationTime = metrics.timer( "launcher_generation_seconds", "Time taken by a whole generation." );
+        filesChanged = metrics.counter( "launcher_files_changed_total", "Generated files that were written because their content changed." );
+        filesDeleted = metrics.counter( "launcher_files_deleted_total", "Generated files that were deleted because they went stale." );
+        bytesWritten = metrics.counter( "launcher_bytes_written_total", "Bytes written to changed files." );
+        generationFailures = metrics.counter( "launcher_generation_failures_total", "Generations that failed." );
     }
 
     public void addGenerator( Generator g ) {
+        renderTimes.add( MetricsRegistry.getInstance().timer( "launcher_render_seconds", "Time taken by a single generator.",
+                                                              "generator", g.getClass().getSimpleName(),
+                                                              "index", Integer.toString( generators.size() ) ) );
         generators.add( g );
     }
 
@@ -58,50 +97,138 @@ public class TemplateLauncherManager {
         instances.add( i );
     }
 
-    private Map<File, byte[]> currentFiles = Collections.EMPTY_MAP;
-
-    public synchronized void doGeneration() throws Exception {
-        Map<File, byte[]> newFiles = new HashMap<>();
+    private OutputManifest manifest;
+
+    /**
+     * Runs every generator and writes the files whose content changed since
+     * the previous generation.
+     *
+     * @return the files that were written or deleted.
+     *
+     * @throws Exception if the docker state could not be collected or a
+     *                   generator failed.
+     */
+    public synchronized GenerationResult doGeneration() throws Exception {
+        long generationStart = System.nanoTime();
+        boolean success = false;
+        try {
+            GenerationResult result = generate();
+            success = true;
+            return result;
+        } finally {
+            generationTime.recordSince( generationStart );
+            if ( !success ) {
+                generationFailures.increment();
+            }
+        }
+    }
 
-        DockerState state = new DockerState();
-        for ( DockerInstance instance : instances ) {
-            instance.appendToState( state );
+    private GenerationResult generate() throws Exception {
+        if ( manifest == null ) {
+            manifest = loadManifest();
         }
 
-        for ( Generator g : generators ) {
-            newFiles.putAll( g.generate( state ) );
+        long collectStart = System.nanoTime();
+        DockerState state = collectState();
+        collectTime.recordSince( collectStart );
+
+        GenerationResult result = new GenerationResult();
+        StagingOutputSink sink = new StagingOutputSink( manifest, outputWriter );
+        try {
+            for ( int i = 0; i < generators.size(); i++ ) {
+                long renderStart = System.nanoTime();
+                generators.get( i ).generate( state, sink );
+                renderTimes.get( i ).recordSince( renderStart );
+            }
+            for ( File file : sink.commit() ) {
+                result.addChangedFile( file );
+                filesChanged.increment();
+                bytesWritten.add( sink.getManifest().get( file ).getLength() );
+            }
+        } finally {
+            sink.discard();
         }
 
-        if ( mapsEqual( newFiles, currentFiles ) ) {
-            // No Changes
-            return;
+        OutputManifest newManifest = sink.getManifest();
+        if ( deleteStaleFiles ) {
+            for ( File key : manifest.getFiles() ) {
+                if ( !newManifest.contains( key ) ) {
+                    outputWriter.delete( key );
+                    result.addDeletedFile( key );
+                    filesDeleted.increment();
+                }
+            }
         }
 
-        currentFiles = newFiles;
-        for ( Map.Entry<File, byte[]> entry : newFiles.entrySet() ) {
-            File key = entry.getKey();
-            byte[] value = entry.getValue();
-            FileUtils.writeByteArrayToFile( key, value );
+        boolean manifestChanged = !newManifest.equals( manifest );
+        manifest = newManifest;
+        if ( manifestFile != null && manifestChanged ) {
+            manifest.save( manifestFile, outputWriter );
         }
+        return result;
+    }
 
+    private OutputManifest loadManifest() {
+        if ( manifestFile != null && manifestFile.isFile() ) {
+            try {
+                return OutputManifest.load( manifestFile );
+            } catch ( IOException | RuntimeException ex ) {
+                LoggerFactory.getLogger( getClass() ).warn( "Unable to read output manifest, all files will be checked.", ex );
+            }
+        }
+        return new OutputManifest();
     }
 
-    private boolean mapsEqual( Map<File, byte[]> m1, Map<File, byte[]> m2 ) {
-        if ( m1.size() != m2.size() ) {
-            return false;
+    /**
+     * Collects the containers from every docker instance. When parallelism is
+     * enabled the instances are queried concurrently, but the results are
+     * always merged in the order the instances were added.
+     *
+     * @return the combined docker state.
+     *
+     * @throws Exception if any instance could not be queried.
+     */
+    private DockerState collectState() throws Exception {
+        DockerState state = new DockerState();
+        if ( parallelism <= 1 || instances.size() <= 1 ) {
+            for ( DockerInstance instance : instances ) {
+                instance.appendToState( state );
+            }
+            return state;
         }
 
-        for ( Map.Entry<File, byte[]> entry : m1.entrySet() ) {
-            File key = entry.getKey();
-            byte[] m1Value = entry.getValue();
+        if ( collectExecutor == null ) {
+            collectExecutor = Executors.newFixedThreadPool( instances.size(), new DaemonThreadFactory( "docker-collect" ) );
+        }
 
-            byte[] m2Value = m2.get( key );
-            if ( m2Value == null || !Arrays.equals( m1Value, m2Value ) ) {
-                return false;
-            }
+        List<Future<List<DockerContainer>>> futures = new ArrayList<>();
+        for ( final DockerInstance instance : instances ) {
+            futures.add( collectExecutor.submit( new Callable<List<DockerContainer>>() {
+
+                @Override
+                public List<DockerContainer> call() throws Exception {
+                    return instance.collectContainers();
+                }
+            } ) );
         }
 
-        return true;
+        try {
+            for ( Future<List<DockerContainer>> future : futures ) {
+                for ( DockerContainer container : future.get() ) {
+                    state.addContainer( container );
+                }
+            }
+        } catch ( ExecutionException ex ) {
+            if ( ex.getCause() instanceof Exception ) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            for ( Future<List<DockerContainer>> future : futures ) {
+                future.cancel( false );
+            }
+        }
+        return state;
     }
 
     public List<String> getLaunchCommand() {
@@ -112,25 +239,98 @@ public class TemplateLauncherManager {
         this.launchCommand = launchCommand;
     }
 
+    public FsyncPolicy getFsyncPolicy() {
+        return outputWriter.getFsyncPolicy();
+    }
+
+    public void setFsyncPolicy( FsyncPolicy fsyncPolicy ) {
+        outputWriter = new OutputWriter( fsyncPolicy );
+    }
+
+    public File getManifestFile() {
+        return manifestFile;
+    }
+
+    /**
+     * Sets where the digests of the generated files are stored, so a
+     * restarted launcher knows which files are already up to date.
+     *
+     * @param manifestFile the manifest file, or null to keep it in memory
+     *                     only.
+     */
+    public void setManifestFile( File manifestFile ) {
+        this.manifestFile = manifestFile;
+    }
+
+    public boolean isDeleteStaleFiles() {
+        return deleteStaleFiles;
+    }
+
+    /**
+     * Sets whether files that a generator stops producing are deleted.
+     *
+     * @param deleteStaleFiles true to delete stale files.
+     */
+    public void setDeleteStaleFiles( boolean deleteStaleFiles ) {
+        this.deleteStaleFiles = deleteStaleFiles;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets whether docker instances are queried concurrently. A value of 1
+     * queries the instances one at a time.
+     *
+     * @param parallelism the parallelism level.
+     */
+    public void setParallelism( int parallelism ) {
+        this.parallelism = Math.max( 1, parallelism );
+    }
+
     public String getNotifyCommand() {
-        return notifyCommand;
+        return notifyRunner != null ? notifyRunner.getCommand() : null;
     }
 
     public void setNotifyCommand( String notifyCommand ) {
-        this.notifyCommand = notifyCommand;
+        this.notifyRunner = notifyCommand != null ? new NotifyRunner( notifyCommand ) : null;
+    }
+
+    /**
+     * @return the runner for the notify command, or null if there is none.
+     */
+    public NotifyRunner getNotifyRunner() {
+        return notifyRunner;
+    }
+
+    public RefreshScheduler getRefreshScheduler() {
+        return refreshScheduler;
     }
 
     public void startMonitoring() {
-        RefreshMonitorThread monitorThread = new RefreshMonitorThread();
-        monitorThread.start();
+        refreshScheduler.start();
+
+        FileSystemMonitor fileMonitor = new FileSystemMonitor( new Runnable() {
+
+            @Override
+            public void run() {
+                requestRefresh();
+            }
+        } );
+        for ( Generator g : generators ) {
+            if ( g instanceof WatchableGenerator ) {
+                ( (WatchableGenerator) g ).registerWatches( fileMonitor );
+            }
+        }
+        fileMonitor.start();
+
         for ( DockerInstance docker : instances ) {
             docker.startMonitoring();
         }
     }
 
     private final Object eventLock = new Object();
-    private boolean refreshQueued = false;
-    private boolean commandStarted = false;
 
     public void startUp() throws Exception {
         Process p = null;
@@ -140,59 +340,41 @@ public class TemplateLauncherManager {
                 ProcessBuilder pb = new ProcessBuilder( launchCommand );
                 p = pb.inheritIO().start();
             }
-            commandStarted = true;
-            eventLock.notifyAll();
         }
+        refreshScheduler.setReady();
         if ( p != null ) {
             System.exit( p.waitFor() );
         }
     }
 
     public void reportDockerEvent() {
-        synchronized ( eventLock ) {
-            refreshQueued = true;
-            eventLock.notifyAll();
-        }
+        requestRefresh();
+    }
+
+    /**
+     * Requests a refresh because one of the inputs to the generators changed.
+     */
+    public void requestRefresh() {
+        refreshScheduler.eventReceived();
     }
 
     private void doRefresh() {
+        GenerationResult result;
         synchronized ( eventLock ) {
             try {
-                doGeneration();
-                if ( notifyCommand != null ) {
-                    ProcessBuilder pb = new ProcessBuilder( notifyCommand );
-                    pb.redirectError( ProcessBuilder.Redirect.INHERIT );
-                    pb.redirectOutput( ProcessBuilder.Redirect.INHERIT );
-                    pb.start().waitFor();
-                }
+                result = doGeneration();
             } catch ( Exception ex ) {
                 LoggerFactory.getLogger( getClass() ).error( "Error reloading templates.", ex );
+                return;
             }
         }
-    }
-
-    private class RefreshMonitorThread extends Thread {
-
-        public RefreshMonitorThread() {
+        if ( !result.hasChanges() ) {
+            return;
         }
-
-        @Override
-        public void run() {
-            while ( true ) {
-                synchronized ( eventLock ) {
-                    if ( refreshQueued && commandStarted ) {
-                        refreshQueued = false;
-                        doRefresh();
-                    }
-
-                    try {
-                        eventLock.wait();
-                    } catch ( InterruptedException ignore ) {
-                    }
-                }
-            }
+        LoggerFactory.getLogger( getClass() ).info( "Configuration updated: " + result );
+        if ( notifyRunner != null ) {
+            notifyRunner.requestNotify();
         }
-
     }
 
 }
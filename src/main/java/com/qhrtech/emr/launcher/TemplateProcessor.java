@@ -16,78 +16,279 @@
 package com.qhrtech.emr.launcher;
 
 import com.qhrtech.emr.launcher.docker.DockerState;
+import freemarker.cache.StrongCacheStorage;
 import freemarker.template.Configuration;
+import freemarker.template.ObjectWrapper;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateExceptionHandler;
+import freemarker.template.TemplateHashModel;
 import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  *
  * @author Blake Dickie
  */
-public class TemplateProcessor implements Generator {
+public class TemplateProcessor implements WatchableGenerator {
+
+    public static final long DEFAULT_UPDATE_DELAY = 5000;
+    public static final String TEMPLATE_EXTENSION = ".ftl";
+
+    private static final ForkJoinPool RENDER_POOL = new ForkJoinPool();
+
+    // Only the latest model is kept, generations never overlap.
+    private static TemplateDataModel sharedModel;
 
     private final File source;
     private final File destination;
+    private long updateDelay = DEFAULT_UPDATE_DELAY;
+    private Configuration cfg;
+    private String relativePath;
 
     public TemplateProcessor( File source, File destination ) {
         this.source = source;
         this.destination = destination;
     }
 
-    public Map<String, Object> buildDataModel() {
-        Map<String, Object> result = new HashMap<>();
-        result.put( "env", System.getenv() );
-        return result;
+    public long getUpdateDelay() {
+        return updateDelay;
     }
 
-    @Override
-    public Map<File, byte[]> generate( DockerState state ) throws Exception {
-        Configuration cfg = new Configuration( Configuration.VERSION_2_3_22 );
-        cfg.setDefaultEncoding( "UTF-8" );
-        cfg.setTemplateExceptionHandler( TemplateExceptionHandler.RETHROW_HANDLER );
+    /**
+     * Sets how long a compiled template is reused before its source file is
+     * checked for modifications.
+     *
+     * @param updateDelay the delay in milliseconds.
+     */
+    public synchronized void setUpdateDelay( long updateDelay ) {
+        this.updateDelay = updateDelay;
+        if ( cfg != null ) {
+            cfg.setTemplateUpdateDelayMilliseconds( updateDelay );
+        }
+    }
+
+    /**
+     * Gets the data model to render with. The model is shared by every
+     * processor rendering the same state, which is every template in a
+     * generation, so each value is only wrapped once per generation.
+     *
+     * @param state   the docker state.
+     * @param wrapper the object wrapper of the configuration.
+     *
+     * @return the data model.
+     */
+    private static TemplateDataModel getDataModel( DockerState state, ObjectWrapper wrapper ) {
+        synchronized ( TemplateProcessor.class ) {
+            if ( sharedModel == null || !sharedModel.isFor( state, wrapper ) ) {
+                sharedModel = new TemplateDataModel( state, wrapper );
+            }
+            return sharedModel;
+        }
+    }
+
+    /**
+     * Gets the FreeMarker configuration, creating it on first use. The
+     * configuration is kept for the life of the processor so compiled
+     * templates are cached between generations.
+     *
+     * @return the configuration.
+     *
+     * @throws IOException if the template source does not exist.
+     */
+    private synchronized Configuration getConfiguration() throws IOException {
+        if ( cfg != null ) {
+            return cfg;
+        }
+
+        Configuration newCfg = new Configuration( Configuration.VERSION_2_3_22 );
+        newCfg.setDefaultEncoding( "UTF-8" );
+        newCfg.setTemplateExceptionHandler( TemplateExceptionHandler.RETHROW_HANDLER );
+        newCfg.setCacheStorage( new StrongCacheStorage() );
+        newCfg.setTemplateUpdateDelayMilliseconds( updateDelay );
+        newCfg.setLocalizedLookup( false );
 
-        String relativePath;
         if ( source.isDirectory() ) {
-            cfg.setDirectoryForTemplateLoading( source );
+            newCfg.setDirectoryForTemplateLoading( source );
             relativePath = "";
         } else if ( source.isFile() ) {
-            cfg.setDirectoryForTemplateLoading( source.getParentFile() );
+            newCfg.setDirectoryForTemplateLoading( source.getParentFile() );
             relativePath = source.getName();
         } else {
             throw new IllegalArgumentException( "Unknown path: " + source.getPath() );
         }
 
-        return generateConfigsImpl( source, destination, relativePath, cfg );
+        cfg = newCfg;
+        return cfg;
     }
 
-    private Map<File, byte[]> generateConfigsImpl( File source, File destination, String relativePath, Configuration cfg ) throws IOException, TemplateException {
+    @Override
+    public void registerWatches( FileSystemMonitor monitor ) {
+        final File sourceFile = source.getAbsoluteFile();
+        if ( sourceFile.isDirectory() ) {
+            monitor.watch( sourceFile, true, new FileSystemMonitor.Listener() {
+
+                @Override
+                public boolean fileChanged( File file ) {
+                    if ( file.isDirectory() ) {
+                        clearTemplateCache();
+                    } else {
+                        String name = sourceFile.toPath().relativize( file.toPath() ).toString();
+                        removeFromTemplateCache( name.replace( File.separatorChar, '/' ) );
+                    }
+                    return true;
+                }
+
+                @Override
+                public void watchLost( File directory ) {
+                    clearTemplateCache();
+                }
+            } );
+        } else {
+            monitor.watch( sourceFile.getParentFile(), false, new FileSystemMonitor.Listener() {
 
-        Map<File, byte[]> result = new HashMap<>();
+                @Override
+                public boolean fileChanged( File file ) {
+                    if ( file.equals( sourceFile ) || file.equals( sourceFile.getParentFile() ) ) {
+                        clearTemplateCache();
+                        return true;
+                    }
+                    return false;
+                }
+
+                @Override
+                public void watchLost( File directory ) {
+                    clearTemplateCache();
+                }
+            } );
+        }
+    }
 
-        if ( source.isFile() ) {
-            Template template = cfg.getTemplate( relativePath );
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            try ( Writer out = new BufferedWriter( new OutputStreamWriter( bout ) ) ) {
-                template.process( buildDataModel(), out );
+    private synchronized void clearTemplateCache() {
+        if ( cfg != null ) {
+            cfg.clearTemplateCache();
+        }
+    }
+
+    private synchronized void removeFromTemplateCache( String name ) {
+        if ( cfg == null ) {
+            return;
+        }
+        try {
+            cfg.removeTemplateFromCache( name );
+        } catch ( IOException ex ) {
+            cfg.clearTemplateCache();
+        }
+    }
+
+    @Override
+    public void generate( DockerState state, OutputSink sink ) throws Exception {
+        Configuration config = getConfiguration();
+        TemplateHashModel dataModel = getDataModel( state, config.getObjectWrapper() );
+
+        if ( !source.isDirectory() ) {
+            render( config, relativePath, dataModel, sink, destination );
+            return;
+        }
+
+        try {
+            RENDER_POOL.invoke( new RenderTask( config, source, destination, relativePath, dataModel, sink ) );
+        } catch ( RenderException ex ) {
+            Throwable cause = ex.getCause();
+            while ( cause instanceof RenderException ) {
+                cause = cause.getCause();
             }
-            result.put( destination, bout.toByteArray() );
+            throw (Exception) cause;
+        }
+    }
 
-        } else {
-            if ( !relativePath.isEmpty() ) {
-                relativePath += "/";
+    private static void render( Configuration config, String templateName, TemplateHashModel dataModel, OutputSink sink, File output ) throws IOException, TemplateException {
+        Template template = config.getTemplate( templateName );
+        // Written in the configured encoding rather than the platform's, so the
+        // same template always produces the same bytes.
+        try ( Writer out = new BufferedWriter( new OutputStreamWriter( sink.open( output ), config.getDefaultEncoding() ) ) ) {
+            template.process( dataModel, out );
+        }
+    }
+
+    /**
+     * Renders one file or directory of a template tree. Directories fork a
+     * task for each child, templates (files ending in .ftl) are rendered to
+     * the same relative path without the extension and all other files are
+     * copied as is.
+     */
+    private static class RenderTask extends RecursiveAction {
+
+        private final Configuration config;
+        private final File source;
+        private final File destination;
+        private final String relativePath;
+        private final TemplateHashModel dataModel;
+        private final OutputSink sink;
+
+        public RenderTask( Configuration config, File source, File destination, String relativePath, TemplateHashModel dataModel, OutputSink sink ) {
+            this.config = config;
+            this.source = source;
+            this.destination = destination;
+            this.relativePath = relativePath;
+            this.dataModel = dataModel;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if ( source.isDirectory() ) {
+                    computeDirectory();
+                    return;
+                }
+
+                String name = source.getName();
+                if ( name.endsWith( TEMPLATE_EXTENSION ) ) {
+                    File output = new File( destination.getParentFile(), name.substring( 0, name.length() - TEMPLATE_EXTENSION.length() ) );
+                    render( config, relativePath, dataModel, sink, output );
+                } else {
+                    try ( OutputStream out = sink.open( destination ) ) {
+                        Files.copy( source.toPath(), out );
+                    }
+                }
+            } catch ( IOException | TemplateException ex ) {
+                throw new RenderException( ex );
+            }
+        }
+
+        private void computeDirectory() {
+            File[] children = source.listFiles();
+            if ( children == null ) {
+                return;
             }
+            Arrays.sort( children );
+
+            String prefix = relativePath.isEmpty() ? "" : relativePath + "/";
+            List<RenderTask> tasks = new ArrayList<>();
+            for ( File child : children ) {
+                tasks.add( new RenderTask( config, child, new File( destination, child.getName() ), prefix + child.getName(), dataModel, sink ) );
+            }
+            invokeAll( tasks );
         }
 
-        return result;
+    }
+
+    private static class RenderException extends RuntimeException {
+
+        public RenderException( Exception cause ) {
+            super( cause );
+        }
 
     }
 
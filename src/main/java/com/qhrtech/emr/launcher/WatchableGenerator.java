@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+/**
+ * A generator whose output also depends on files, not just the docker state.
+ *
+ * @author Blake Dickie
+ */
+public interface WatchableGenerator extends Generator {
+
+    /**
+     * Registers the directories this generator reads with the monitor, so
+     * changes to them trigger a refresh.
+     *
+     * @param monitor the monitor to register with.
+     */
+    public void registerWatches( FileSystemMonitor monitor );
+
+}
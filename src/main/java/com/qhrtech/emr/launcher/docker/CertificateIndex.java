@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.docker;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Index of the certificates (*.crt files) in a directory, keyed by the domain
+ * each one is named after.
+ *
+ * The names are stored in a trie of reversed domain labels, so finding the
+ * most specific certificate for a host only walks the labels of that host,
+ * and a certificate only ever matches on a label boundary ("example.com"
+ * matches "www.example.com" but not "evilexample.com").
+ *
+ * The directory is only listed again after the index has been invalidated,
+ * which the generator does when the directory is seen to change.
+ *
+ * @author Blake Dickie
+ */
+public class CertificateIndex {
+
+    public static final String CERT_EXTENSION = ".crt";
+
+    private final File directory;
+    private volatile Snapshot snapshot;
+
+    public CertificateIndex( File directory ) {
+        this.directory = directory;
+    }
+
+    public CertificateIndex( Collection<String> certificates ) {
+        this.directory = null;
+        this.snapshot = new Snapshot( certificates );
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Lists the directory again if the index was invalidated since it was
+     * built.
+     */
+    public synchronized void refreshIfChanged() {
+        if ( directory != null && snapshot == null ) {
+            snapshot = new Snapshot( listCertificates() );
+        }
+    }
+
+    /**
+     * Forces the directory to be listed again on the next refresh.
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    public SortedSet<String> getCertificates() {
+        return current().names;
+    }
+
+    public boolean contains( String name ) {
+        return current().names.contains( name );
+    }
+
+    /**
+     * Finds the certificate for the longest domain that is a host or one of
+     * its parent domains.
+     *
+     * @param host the hostname to find a certificate for.
+     *
+     * @return the certificate name, or null if none match.
+     */
+    public String findBestMatch( String host ) {
+        Node node = current().root;
+        String bestMatch = null;
+        int end = host.length();
+        while ( end > 0 ) {
+            int dot = host.lastIndexOf( '.', end - 1 );
+            node = node.children.get( host.substring( dot + 1, end ).toLowerCase() );
+            if ( node == null ) {
+                break;
+            }
+            if ( node.certificate != null ) {
+                bestMatch = node.certificate;
+            }
+            end = dot;
+        }
+        return bestMatch;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if ( current == null ) {
+            refreshIfChanged();
+            current = snapshot;
+        }
+        return current != null ? current : Snapshot.EMPTY;
+    }
+
+    private Collection<String> listCertificates() {
+        File[] files = directory.listFiles();
+        if ( files == null ) {
+            return Collections.emptyList();
+        }
+        Collection<String> certs = new TreeSet<>();
+        for ( File file : files ) {
+            String filename = file.getName();
+            if ( filename.toLowerCase().endsWith( CERT_EXTENSION ) ) {
+                certs.add( filename.substring( 0, filename.length() - CERT_EXTENSION.length() ) );
+            }
+        }
+        return certs;
+    }
+
+    private static class Snapshot {
+
+        private static final Snapshot EMPTY = new Snapshot( Collections.<String>emptyList() );
+
+        private final SortedSet<String> names;
+        private final Node root;
+
+        public Snapshot( Collection<String> certificates ) {
+            names = Collections.unmodifiableSortedSet( new TreeSet<>( certificates ) );
+            root = new Node();
+            for ( String name : names ) {
+                Node node = root;
+                String[] labels = name.toLowerCase().split( "\\." );
+                for ( int i = labels.length - 1; i >= 0; i-- ) {
+                    Node child = node.children.get( labels[i] );
+                    if ( child == null ) {
+                        child = new Node();
+                        node.children.put( labels[i], child );
+                    }
+                    node = child;
+                }
+                node.certificate = name;
+            }
+        }
+
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private String certificate;
+
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.docker;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read only environment of a container, stored as one array of alternating
+ * keys and values sorted by key. This takes a fraction of the memory of a
+ * HashMap, lookups are a binary search, and iteration is always in key
+ * order.
+ *
+ * @author Blake Dickie
+ */
+class ContainerEnvironment extends AbstractMap<String, String> {
+
+    private static final Comparator<String[]> KEY_ORDER = new Comparator<String[]>() {
+
+        @Override
+        public int compare( String[] o1, String[] o2 ) {
+            return o1[0].compareTo( o2[0] );
+        }
+    };
+
+    private final String[] entries;
+
+    private ContainerEnvironment( String[] entries ) {
+        this.entries = entries;
+    }
+
+    /**
+     * Copies a map into the compact form.
+     *
+     * @param environment the variables to copy.
+     *
+     * @return the environment, or null if the map was null.
+     */
+    public static ContainerEnvironment copyOf( Map<String, String> environment ) {
+        if ( environment == null ) {
+            return null;
+        }
+        if ( environment instanceof ContainerEnvironment ) {
+            return (ContainerEnvironment) environment;
+        }
+        String[][] pairs = new String[environment.size()][];
+        int i = 0;
+        for ( Map.Entry<String, String> entry : environment.entrySet() ) {
+            pairs[i++] = new String[]{ entry.getKey(), entry.getValue() };
+        }
+        return build( pairs, null );
+    }
+
+    /**
+     * Parses the "NAME=value" strings docker reports for a container,
+     * sharing every name and value through the interner. If a name is given
+     * more than once the last value wins.
+     *
+     * @param env      the variables, may be null.
+     * @param interner the interner for the names and values.
+     *
+     * @return the environment.
+     */
+    public static ContainerEnvironment parse( String[] env, StringInterner interner ) {
+        if ( env == null ) {
+            return build( new String[0][], interner );
+        }
+        String[][] pairs = new String[env.length][];
+        for ( int i = 0; i < env.length; i++ ) {
+            int split = env[i].indexOf( '=' );
+            if ( split < 0 ) {
+                pairs[i] = new String[]{ env[i], "" };
+            } else {
+                pairs[i] = new String[]{ env[i].substring( 0, split ), env[i].substring( split + 1 ) };
+            }
+        }
+        return build( pairs, interner );
+    }
+
+    private static ContainerEnvironment build( String[][] pairs, StringInterner interner ) {
+        // A stable sort keeps repeated names in their original order, so the
+        // last one can replace the others.
+        Arrays.sort( pairs, KEY_ORDER );
+        String[] entries = new String[pairs.length * 2];
+        int size = 0;
+        for ( String[] pair : pairs ) {
+            if ( size > 0 && entries[size - 2].equals( pair[0] ) ) {
+                size -= 2;
+            }
+            entries[size++] = interner != null ? interner.intern( pair[0] ) : pair[0];
+            entries[size++] = interner != null ? interner.intern( pair[1] ) : pair[1];
+        }
+        return new ContainerEnvironment( size == entries.length ? entries : Arrays.copyOf( entries, size ) );
+    }
+
+    private int indexOf( Object key ) {
+        if ( !( key instanceof String ) ) {
+            return -1;
+        }
+        int low = 0;
+        int high = entries.length / 2 - 1;
+        while ( low <= high ) {
+            int mid = ( low + high ) >>> 1;
+            int result = entries[mid * 2].compareTo( (String) key );
+            if ( result < 0 ) {
+                low = mid + 1;
+            } else if ( result > 0 ) {
+                high = mid - 1;
+            } else {
+                return mid * 2;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String get( Object key ) {
+        int index = indexOf( key );
+        return index >= 0 ? entries[index + 1] : null;
+    }
+
+    @Override
+    public boolean containsKey( Object key ) {
+        return indexOf( key ) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return entries.length / 2;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < entries.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if ( next >= entries.length ) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<>( entries[next], entries[next + 1] );
+                        next += 2;
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.length / 2;
+            }
+        };
+    }
+
+}
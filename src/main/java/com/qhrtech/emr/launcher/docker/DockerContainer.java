@@ -16,7 +16,8 @@
 package com.qhrtech.emr.launcher.docker;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -30,10 +31,11 @@ public class DockerContainer {
     private String containerId;
     private Map<String, String> environment;
     private String containerIpAddress;
-    private List<DockerPort> ports;
+    private volatile DockerPort[] ports;
+    private volatile PortTable portTable;
 
     public DockerContainer() {
-        ports = new ArrayList<>();
+        ports = new DockerPort[0];
     }
 
     public String getMachineHostname() {
@@ -56,8 +58,14 @@ public class DockerContainer {
         return environment;
     }
 
+    /**
+     * Sets the environment variables. The map is copied into a compact read
+     * only form, so later changes to it are not seen.
+     *
+     * @param environment the variables.
+     */
     public void setEnvironment( Map<String, String> environment ) {
-        this.environment = environment;
+        this.environment = ContainerEnvironment.copyOf( environment );
     }
 
     public String getContainerIpAddress() {
@@ -69,34 +77,49 @@ public class DockerContainer {
     }
 
     public List<DockerPort> getPorts() {
-        return ports;
+        return Collections.unmodifiableList( Arrays.asList( ports ) );
     }
 
-    public void addPort( DockerPort port ) {
-        ports.add( port );
+    public synchronized void addPort( DockerPort port ) {
+        // Containers rarely have more than a few ports, so the array is sized
+        // exactly rather than left with room to grow.
+        DockerPort[] newPorts = Arrays.copyOf( ports, ports.length + 1 );
+        newPorts[ports.length] = port;
+        ports = newPorts;
+        portTable = null;
     }
 
     public DockerPort findPort( int port ) {
-        for ( DockerPort p : ports ) {
-            if ( p.getContainerPort() == port && !p.isUdp() ) {
-                return p;
-            }
-        }
-        return null;
+        return portTable().get( port, false );
     }
 
     public DockerPort findUDPPort( int port ) {
-        for ( DockerPort p : ports ) {
-            if ( p.getContainerPort() == port && p.isUdp() ) {
-                return p;
+        return portTable().get( port, true );
+    }
+
+    private PortTable portTable() {
+        PortTable table = portTable;
+        if ( table == null ) {
+            synchronized ( this ) {
+                table = portTable;
+                if ( table == null ) {
+                    table = new PortTable( Arrays.asList( ports ) );
+                    portTable = table;
+                }
             }
         }
-        return null;
+        return table;
     }
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString( this );
+        return new ToStringBuilder( this )
+                .append( "machineHostname", machineHostname )
+                .append( "containerId", containerId )
+                .append( "environment", environment )
+                .append( "containerIpAddress", containerIpAddress )
+                .append( "ports", getPorts() )
+                .toString();
     }
 
     public String getEnvWithDefault( String name, String defaultValue ) {
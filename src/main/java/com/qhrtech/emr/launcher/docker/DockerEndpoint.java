@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.docker;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Where to reach a docker daemon, parsed from the value given to --docker.
+ *
+ * <ul>
+ * <li>{@code host} or {@code host:port}: TLS to the daemon, on port 2376 by
+ * default.</li>
+ * <li>{@code https://host:port}: the same, spelled out.</li>
+ * <li>{@code tcp://host:port}: plain HTTP, for trusted networks, on port
+ * 2375 by default.</li>
+ * <li>{@code unix:///var/run/docker.sock}: the local daemon's socket. The
+ * published ports are reached on localhost unless another name is given
+ * with {@code ?host=name}.</li>
+ * </ul>
+ *
+ * @author Blake Dickie
+ */
+public class DockerEndpoint {
+
+    public static final String LOCAL_HOSTNAME = "localhost";
+    public static final int DEFAULT_PLAIN_PORT = 2375;
+
+    private final String hostname;
+    private final int port;
+    private final String uri;
+
+    public DockerEndpoint( String hostname, int port, String uri ) {
+        this.hostname = hostname;
+        this.port = port;
+        this.uri = uri;
+    }
+
+    /**
+     * Parses an endpoint.
+     *
+     * @param value the endpoint.
+     *
+     * @return the endpoint.
+     *
+     * @throws IllegalArgumentException if the value is not a valid endpoint.
+     */
+    public static DockerEndpoint parse( String value ) {
+        if ( !value.contains( "://" ) ) {
+            value = "https://" + value;
+        }
+        URI parsed;
+        try {
+            parsed = new URI( value );
+        } catch ( URISyntaxException ex ) {
+            throw new IllegalArgumentException( "Invalid docker endpoint: " + value, ex );
+        }
+
+        String scheme = parsed.getScheme().toLowerCase();
+        switch ( scheme ) {
+            case "unix":
+                if ( parsed.getPath() == null || parsed.getPath().isEmpty() ) {
+                    throw new IllegalArgumentException( "Docker socket path missing: " + value );
+                }
+                String hostname = LOCAL_HOSTNAME;
+                if ( parsed.getQuery() != null ) {
+                    for ( String param : parsed.getQuery().split( "&" ) ) {
+                        if ( param.startsWith( "host=" ) && param.length() > 5 ) {
+                            hostname = param.substring( 5 );
+                        }
+                    }
+                }
+                return new DockerEndpoint( hostname, -1, "unix://" + parsed.getPath() );
+            case "tcp":
+            case "http":
+                return network( parsed, value, "http", DEFAULT_PLAIN_PORT );
+            case "https":
+                return network( parsed, value, "https", DockerInstance.DEFAULT_PORT );
+            default:
+                throw new IllegalArgumentException( "Unsupported docker endpoint scheme: " + value );
+        }
+    }
+
+    private static DockerEndpoint network( URI parsed, String value, String scheme, int defaultPort ) {
+        if ( parsed.getHost() == null ) {
+            throw new IllegalArgumentException( "Docker hostname missing: " + value );
+        }
+        int port = parsed.getPort() >= 0 ? parsed.getPort() : defaultPort;
+        return new DockerEndpoint( parsed.getHost(), port, String.format( "%s://%s:%d", scheme, parsed.getHost(), port ) );
+    }
+
+    /**
+     * @return the hostname the published container ports are reached on.
+     */
+    public String getHostname() {
+        return hostname;
+    }
+
+    /**
+     * @param newHostname the hostname the published ports are reached on.
+     *
+     * @return the same daemon address with another hostname.
+     */
+    public DockerEndpoint withHostname( String newHostname ) {
+        return new DockerEndpoint( newHostname, port, uri );
+    }
+
+    /**
+     * @return the port of the docker API, or -1 for a socket.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * @return true if the daemon is reached over TLS.
+     */
+    public boolean isSecure() {
+        return uri.startsWith( "https:" );
+    }
+
+    @Override
+    public String toString() {
+        return uri;
+    }
+
+}
@@ -15,8 +15,13 @@
  */
 package com.qhrtech.emr.launcher.docker;
 
+import com.qhrtech.emr.launcher.DaemonThreadFactory;
 import com.qhrtech.emr.launcher.TemplateLauncherManager;
+import com.qhrtech.emr.launcher.metrics.Counter;
+import com.qhrtech.emr.launcher.metrics.Histogram;
+import com.qhrtech.emr.launcher.metrics.MetricsRegistry;
 import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.NotFoundException;
 import com.github.dockerjava.api.async.ResultCallback;
 import com.github.dockerjava.api.command.EventsCmd;
 import com.github.dockerjava.api.command.InspectContainerResponse;
@@ -25,15 +30,33 @@ import com.github.dockerjava.api.model.Event;
 import com.github.dockerjava.api.model.ExposedPort;
 import com.github.dockerjava.api.model.InternetProtocol;
 import com.github.dockerjava.api.model.Ports;
-import com.github.dockerjava.core.DockerClientBuilder;
-import com.github.dockerjava.core.DockerClientConfig;
 import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
@@ -41,99 +64,601 @@ import java.util.Map;
  */
 public class DockerInstance {
 
+    public static final int DEFAULT_PORT = 2376;
+    public static final long DEFAULT_RESYNC_INTERVAL = 60000;
+    public static final long DEFAULT_RECONNECT_MIN_DELAY = 500;
+    public static final long DEFAULT_RECONNECT_MAX_DELAY = 30000;
+
+    private static final Set<String> REFRESH_EVENTS = new HashSet<>( EventFilter.REFRESH_ACTIONS );
+    private static final Set<String> REMOVE_EVENTS = new HashSet<>( EventFilter.REMOVE_ACTIONS );
+
+    private static final Comparator<DockerContainer> CONTAINER_ORDER = new Comparator<DockerContainer>() {
+
+        @Override
+        public int compare( DockerContainer o1, DockerContainer o2 ) {
+            return o1.getContainerId().compareTo( o2.getContainerId() );
+        }
+    };
+
     private final String hostname;
     private final int portNumber;
-    private DockerClient client;
+    private final DockerTransport transport;
+    private final DockerClient client;
+    private final DockerClient eventClient;
+
+    private final Map<String, DockerContainer> containers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> pendingEvents = new ConcurrentHashMap<>();
+    private final Map<String, Long> eventChanges = new HashMap<>();
+    private final AtomicLong eventSequence = new AtomicLong();
+    private volatile boolean monitoring = false;
+    private volatile boolean reconciled = false;
+    private long resyncInterval = DEFAULT_RESYNC_INTERVAL;
+    private int inspectParallelism = 1;
+    private EventFilter eventFilter = new EventFilter();
+    private ExecutorService inspectExecutor;
+    private ScheduledExecutorService monitorExecutor;
+
+    private long reconnectMinDelay = DEFAULT_RECONNECT_MIN_DELAY;
+    private long reconnectMaxDelay = DEFAULT_RECONNECT_MAX_DELAY;
+    private final Object streamLock = new Object();
+    private final Random random = new Random();
+    private int reconnectAttempts = 0;
+    private long disconnectedAt = 0;
+    private volatile long lastEventTime = 0;
+
+    private final Counter eventsReceived;
+    private final Histogram listLatency;
+    private final Histogram inspectLatency;
+    private final Counter reconnects;
+    private final Histogram eventGap;
+
+    /**
+     * Connects to a docker daemon. The client certificates are only used if
+     * the daemon is reached over TLS.
+     *
+     * @param endpoint    where to reach the daemon.
+     * @param dockerCerts the directory with the client certificates, or null.
+     * @param transport   the connection settings.
+     */
+    public DockerInstance( DockerEndpoint endpoint, File dockerCerts, DockerTransport transport ) {
+        this( endpoint.getHostname(), endpoint.getPort(), endpoint.getUri(), endpoint.isSecure() ? dockerCerts : null, transport );
+    }
+
+    public DockerInstance( String hostname, int portNumber, File dockerCerts, DockerTransport transport ) {
+        this( hostname, portNumber, String.format( "https://%s:%d", hostname, portNumber ), dockerCerts, transport );
+    }
 
     public DockerInstance( String hostname, int portNumber, File dockerCerts ) {
+        this( hostname, portNumber, dockerCerts, DockerTransport.getDefault() );
+    }
+
+    public DockerInstance( String hostname, File dockerCerts ) {
+        this( hostname, DEFAULT_PORT, dockerCerts );
+    }
+
+    /**
+     * Connects to a docker daemon at an explicit API address, such as a plain
+     * HTTP endpoint on a trusted network. The address is parsed the same way
+     * as a --docker value, but the proxied ports are always published on the
+     * given hostname.
+     *
+     * @param hostname    the hostname the proxied ports are published on.
+     * @param uri         the address of the docker API.
+     * @param dockerCerts the directory with the client certificates, or null.
+     * @param transport   the connection settings.
+     *
+     * @throws IllegalArgumentException if the address is not a valid
+     *                                  endpoint.
+     */
+    public DockerInstance( String hostname, String uri, File dockerCerts, DockerTransport transport ) {
+        this( DockerEndpoint.parse( uri ).withHostname( hostname ), dockerCerts, transport );
+    }
+
+    public DockerInstance( String hostname, String uri, File dockerCerts ) {
+        this( hostname, uri, dockerCerts, DockerTransport.getDefault() );
+    }
+
+    private DockerInstance( String hostname, int portNumber, String uri, File dockerCerts, DockerTransport transport ) {
         this.hostname = hostname;
         this.portNumber = portNumber;
+        this.transport = transport;
 
-        DockerClientConfig.DockerClientConfigBuilder confBuilder =
-                                                     DockerClientConfig.createDefaultConfigBuilder()
-                                                     .withUri( String.format( "https://%s:%d", hostname, portNumber ) );
-        if ( dockerCerts != null ) {
-            confBuilder.withDockerCertPath( dockerCerts.getPath() );
-        }
-        DockerClientConfig config = confBuilder.build();
-        client = DockerClientBuilder.getInstance( config ).build();
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        eventsReceived = metrics.counter( "launcher_docker_events_total", "Docker events received.", "host", hostname );
+        listLatency = metrics.timer( "launcher_docker_list_seconds", "Time taken to list the containers on a docker host.", "host", hostname );
+        inspectLatency = metrics.timer( "launcher_docker_inspect_seconds", "Time taken to inspect a single container.", "host", hostname );
+        reconnects = metrics.counter( "launcher_docker_reconnects_total", "Attempts to reconnect the docker event stream.", "host", hostname );
+        eventGap = metrics.timer( "launcher_docker_event_gap_seconds", "Time the docker event stream was disconnected for.", "host", hostname );
+
+        client = transport.createClient( uri, dockerCerts );
+        eventClient = transport.createEventClient( uri, dockerCerts );
     }
 
-    public DockerInstance( String hostname, File dockerCerts ) {
-        this( hostname, 2376, dockerCerts );
+    public long getResyncInterval() {
+        return resyncInterval;
+    }
+
+    /**
+     * Sets how often the cached containers are reconciled against the
+     * container list while monitoring, to catch any events that were missed.
+     *
+     * @param resyncInterval the interval in milliseconds.
+     */
+    public void setResyncInterval( long resyncInterval ) {
+        this.resyncInterval = resyncInterval;
+    }
+
+    public long getReconnectMinDelay() {
+        return reconnectMinDelay;
+    }
+
+    public long getReconnectMaxDelay() {
+        return reconnectMaxDelay;
+    }
+
+    /**
+     * Sets how long to wait before reconnecting to the event stream after it
+     * fails. The delay doubles on each failed attempt, up to the maximum, and
+     * is randomized so many launchers do not reconnect in step.
+     *
+     * @param minDelay the delay before the first attempt, in milliseconds.
+     * @param maxDelay the longest delay between attempts, in milliseconds.
+     */
+    public void setReconnectDelay( long minDelay, long maxDelay ) {
+        this.reconnectMinDelay = Math.max( 1, minDelay );
+        this.reconnectMaxDelay = Math.max( reconnectMinDelay, maxDelay );
+    }
+
+    /**
+     * @return the number of times the event stream has been reconnected.
+     */
+    public long getReconnects() {
+        return reconnects.getCount();
     }
 
     public void startMonitoring() {
-        EventsCmd eventsCmd = client.eventsCmd();
-        EventMonitor exec = eventsCmd.exec( new EventMonitor() );
+        synchronized ( streamLock ) {
+            if ( monitoring ) {
+                return;
+            }
+            monitoring = true;
+            monitorExecutor = Executors.newSingleThreadScheduledExecutor( new DaemonThreadFactory( "docker-monitor-" + hostname ) );
+        }
+
+        if ( resyncInterval > 0 ) {
+            monitorExecutor.scheduleWithFixedDelay( new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        if ( reconcile() ) {
+                            TemplateLauncherManager.getInstance().reportDockerEvent();
+                        }
+                    } catch ( Exception ex ) {
+                        LoggerFactory.getLogger( getClass() ).warn( "Error reconciling docker containers.", ex );
+                    }
+                }
+            }, resyncInterval, resyncInterval, TimeUnit.MILLISECONDS );
+        }
+
+        connectEvents();
         TemplateLauncherManager.getInstance().reportDockerEvent();
     }
 
+    /**
+     * Opens the event stream. After a disconnect the stream resumes from the
+     * time of the last event seen, so the daemon replays only what was missed.
+     * Events in the same second as that event are replayed again, which is
+     * harmless as handling an event is idempotent.
+     */
+    private void connectEvents() {
+        EventsCmd eventsCmd = eventClient.eventsCmd();
+        long since = lastEventTime;
+        boolean reconnecting;
+        synchronized ( streamLock ) {
+            reconnecting = disconnectedAt != 0;
+        }
+        if ( since > 0 ) {
+            eventsCmd.withSince( Long.toString( since ) );
+        } else if ( reconnecting ) {
+            // Nothing to resume from, so the cache has to be rebuilt.
+            reconciled = false;
+            TemplateLauncherManager.getInstance().reportDockerEvent();
+        }
+        try {
+            eventsCmd.exec( new EventMonitor() );
+        } catch ( RuntimeException ex ) {
+            eventStreamEnded( ex );
+        }
+    }
+
+    private void eventStreamEnded( Throwable cause ) {
+        synchronized ( streamLock ) {
+            if ( disconnectedAt == 0 ) {
+                disconnectedAt = System.nanoTime();
+                LoggerFactory.getLogger( getClass() ).warn( "Lost docker event stream from " + hostname + ", reconnecting.", cause );
+            } else if ( cause != null ) {
+                LoggerFactory.getLogger( getClass() ).debug( "Unable to reconnect docker event stream from " + hostname + ".", cause );
+            }
+
+            long delay = Math.min( reconnectMaxDelay, reconnectMinDelay << Math.min( reconnectAttempts, 30 ) );
+            reconnectAttempts++;
+            // Equal jitter: half the delay is fixed, half is random.
+            delay = delay / 2 + (long) ( random.nextDouble() * ( delay - delay / 2 ) );
+            monitorExecutor.schedule( new Runnable() {
+
+                @Override
+                public void run() {
+                    reconnects.increment();
+                    connectEvents();
+                }
+            }, delay, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    private void eventStreamStarted() {
+        synchronized ( streamLock ) {
+            reconnectAttempts = 0;
+            if ( disconnectedAt != 0 ) {
+                long gap = System.nanoTime() - disconnectedAt;
+                disconnectedAt = 0;
+                eventGap.record( gap );
+                LoggerFactory.getLogger( getClass() ).info( "Reconnected docker event stream from " + hostname + " after "
+                                                            + TimeUnit.NANOSECONDS.toMillis( gap ) + "ms." );
+            }
+        }
+    }
+
+    public int getInspectParallelism() {
+        return inspectParallelism;
+    }
+
+    /**
+     * Sets the maximum number of containers inspected concurrently on this
+     * host. A value of 1 inspects serially.
+     *
+     * @param inspectParallelism the maximum concurrent inspections.
+     */
+    public void setInspectParallelism( int inspectParallelism ) {
+        this.inspectParallelism = Math.max( 1, inspectParallelism );
+    }
+
+    public EventFilter getEventFilter() {
+        return eventFilter;
+    }
+
+    /**
+     * Sets which docker events cause a refresh. The container cache is kept
+     * up to date regardless of the filter.
+     *
+     * @param eventFilter the event filter.
+     */
+    public void setEventFilter( EventFilter eventFilter ) {
+        this.eventFilter = eventFilter;
+    }
+
+    public String getHostname() {
+        return hostname;
+    }
+
+    /**
+     * Collects the current containers on this host.
+     *
+     * @return the containers, sorted by container ID so the order is
+     *         independent of the order they were inspected in.
+     */
+    public List<DockerContainer> collectContainers() {
+        // Without the event stream the cache cannot be trusted, so every
+        // refresh has to go back to the daemon.
+        if ( !monitoring || !reconciled ) {
+            reconcile();
+        }
+        List<DockerContainer> result = new ArrayList<>( containers.values() );
+        Collections.sort( result, CONTAINER_ORDER );
+        return result;
+    }
+
     public void appendToState( DockerState state ) {
-        List<Container> containers = client.listContainersCmd().exec();
-        for ( Container c : containers ) {
-            InspectContainerResponse response = client.inspectContainerCmd( c.getId() ).exec();
+        for ( DockerContainer container : collectContainers() ) {
+            state.addContainer( container );
+        }
+    }
+
+    /**
+     * Compares the cached containers to the list of running containers,
+     * inspecting any that are unknown and evicting any that are gone.
+     *
+     * Events are handled while this runs. A container that an event changed
+     * after the list was requested, or that an event is still updating, is
+     * left as the event has it, since the list may be older than the event.
+     *
+     * @return true if the cache was changed.
+     */
+    private synchronized boolean reconcile() {
+        boolean changed = false;
+        long snapshot = eventSequence.get();
+        Set<String> runningIds = new HashSet<>( listContainerIds() );
+        List<String> unknownIds = new ArrayList<>();
+        for ( String containerId : runningIds ) {
+            if ( !monitoring || !containers.containsKey( containerId ) ) {
+                unknownIds.add( containerId );
+            }
+        }
+
+        List<DockerContainer> inspected = inspectContainers( unknownIds );
+        synchronized ( pendingEvents ) {
+            for ( DockerContainer container : inspected ) {
+                if ( !changedByEvent( container.getContainerId(), snapshot ) ) {
+                    containers.put( container.getContainerId(), container );
+                    changed = true;
+                }
+            }
+
+            for ( Iterator<String> it = containers.keySet().iterator(); it.hasNext(); ) {
+                String containerId = it.next();
+                if ( !runningIds.contains( containerId ) && !changedByEvent( containerId, snapshot ) ) {
+                    it.remove();
+                    changed = true;
+                }
+            }
+
+            // Only changes after this snapshot matter to the next reconcile.
+            for ( Iterator<Long> it = eventChanges.values().iterator(); it.hasNext(); ) {
+                if ( it.next() <= snapshot ) {
+                    it.remove();
+                }
+            }
+        }
+        reconciled = true;
+        return changed;
+    }
+
+    /**
+     * Must be called while synchronized on pendingEvents.
+     */
+    private boolean changedByEvent( String containerId, long snapshot ) {
+        Long changedAt = eventChanges.get( containerId );
+        return pendingEvents.containsKey( containerId ) || ( changedAt != null && changedAt > snapshot );
+    }
+
+    /**
+     * Lists the containers running on the daemon.
+     *
+     * @return the IDs of the running containers.
+     */
+    List<String> listContainerIds() {
+        List<Container> running;
+        transport.acquire();
+        long start = System.nanoTime();
+        try {
+            running = client.listContainersCmd().exec();
+        } finally {
+            listLatency.recordSince( start );
+            transport.release();
+        }
+        List<String> ids = new ArrayList<>( running.size() );
+        for ( Container c : running ) {
+            ids.add( c.getId() );
+        }
+        return ids;
+    }
+
+    /**
+     * Updates the cache for the single container named in a docker event.
+     *
+     * @param event the event received from docker.
+     *
+     * @return true if the event passes the event filter and a refresh is
+     *         needed.
+     */
+    private boolean handleEvent( Event event ) {
+        String containerId = event.getId();
+        String action = EventFilter.getAction( event );
+        if ( containerId == null || action == null ) {
+            return false;
+        }
+
+        DockerContainer previous = containers.get( containerId );
+        if ( !updateFromEvent( containerId, action ) ) {
+            return false;
+        }
+        return eventFilter.accepts( event ) && eventFilter.isRelevant( previous, containers.get( containerId ) );
+    }
+
+    /**
+     * Applies a container event to the cache.
+     *
+     * The container is inspected without holding any lock, so a slow daemon
+     * only delays this event and not generations or reconciles. If a newer
+     * event for the same container arrives while it is being inspected, the
+     * newer event's result is the one kept.
+     *
+     * @param containerId the container the event is for.
+     * @param action      the event action.
+     *
+     * @return false if a newer event for the container took over.
+     */
+    boolean updateFromEvent( String containerId, String action ) {
+        boolean refresh = REFRESH_EVENTS.contains( action );
+        if ( !refresh && !REMOVE_EVENTS.contains( action ) ) {
+            return true;
+        }
+        Long sequence = eventSequence.incrementAndGet();
+        pendingEvents.put( containerId, sequence );
+        DockerContainer current = refresh ? inspectContainer( containerId ) : null;
+        synchronized ( pendingEvents ) {
+            if ( !pendingEvents.remove( containerId, sequence ) ) {
+                return false;
+            }
+            if ( current == null ) {
+                containers.remove( containerId );
+            } else {
+                containers.put( containerId, current );
+            }
+            eventChanges.put( containerId, eventSequence.incrementAndGet() );
+        }
+        return true;
+    }
+
+    /**
+     * Inspects a group of containers, up to the inspect parallelism at a time.
+     *
+     * @param containerIds the IDs of the containers to inspect.
+     *
+     * @return the containers that are still running.
+     */
+    private List<DockerContainer> inspectContainers( List<String> containerIds ) {
+        List<DockerContainer> result = new ArrayList<>();
+        if ( inspectParallelism <= 1 || containerIds.size() <= 1 ) {
+            for ( String containerId : containerIds ) {
+                DockerContainer container = inspectContainer( containerId );
+                if ( container != null ) {
+                    result.add( container );
+                }
+            }
+            return result;
+        }
+
+        if ( inspectExecutor == null ) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor( inspectParallelism, inspectParallelism, 60, TimeUnit.SECONDS,
+                                                                  new LinkedBlockingQueue<Runnable>(),
+                                                                  new DaemonThreadFactory( "docker-inspect-" + hostname ) );
+            executor.allowCoreThreadTimeOut( true );
+            inspectExecutor = executor;
+        }
+
+        List<Future<DockerContainer>> futures = new ArrayList<>();
+        for ( final String containerId : containerIds ) {
+            futures.add( inspectExecutor.submit( new Callable<DockerContainer>() {
 
-            DockerContainer container = new DockerContainer();
-            container.setContainerId( response.getId() );
-            container.setMachineHostname( hostname );
+                @Override
+                public DockerContainer call() throws Exception {
+                    return inspectContainer( containerId );
+                }
+            } ) );
+        }
 
-            Map<String, String> environment = new HashMap<String, String>();
-            for ( String envString : response.getConfig().getEnv() ) {
-                String[] parts = envString.split( "=", 2 );
-                environment.put( parts[0], parts[1] );
+        try {
+            for ( Future<DockerContainer> future : futures ) {
+                DockerContainer container = future.get();
+                if ( container != null ) {
+                    result.add( container );
+                }
+            }
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while inspecting containers.", ex );
+        } catch ( ExecutionException ex ) {
+            if ( ex.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException( "Error inspecting containers.", ex.getCause() );
+        } finally {
+            for ( Future<DockerContainer> future : futures ) {
+                future.cancel( false );
             }
-            container.setEnvironment( environment );
+        }
+        return result;
+    }
 
-            InspectContainerResponse.NetworkSettings networkSettings = response.getNetworkSettings();
-            container.setContainerIpAddress( networkSettings.getIpAddress() );
-            for ( Map.Entry<ExposedPort, Ports.Binding[]> entry : networkSettings.getPorts().getBindings().entrySet() ) {
-                ExposedPort key = entry.getKey();
-                Ports.Binding[] value = entry.getValue();
+    /**
+     * Inspects a single container.
+     *
+     * @param containerId the ID of the container to inspect.
+     *
+     * @return the container, or null if it no longer exists or is not
+     *         running.
+     */
+    DockerContainer inspectContainer( String containerId ) {
+        InspectContainerResponse response;
+        transport.acquire();
+        long start = System.nanoTime();
+        try {
+            response = client.inspectContainerCmd( containerId ).exec();
+        } catch ( NotFoundException ex ) {
+            return null;
+        } finally {
+            inspectLatency.recordSince( start );
+            transport.release();
+        }
+        if ( response.getState() != null && !response.getState().isRunning() ) {
+            return null;
+        }
 
-                if ( value == null || value.length == 0 ) {
+        DockerContainer container = new DockerContainer();
+        container.setContainerId( response.getId() );
+        container.setMachineHostname( hostname );
+
+        // Replicas mostly share the same variables, so every name and value is
+        // interned to keep one copy across all the containers.
+        container.setEnvironment( ContainerEnvironment.parse( response.getConfig().getEnv(), StringInterner.getInstance() ) );
+
+        InspectContainerResponse.NetworkSettings networkSettings = response.getNetworkSettings();
+        container.setContainerIpAddress( networkSettings.getIpAddress() );
+        for ( Map.Entry<ExposedPort, Ports.Binding[]> entry : networkSettings.getPorts().getBindings().entrySet() ) {
+            ExposedPort key = entry.getKey();
+            Ports.Binding[] value = entry.getValue();
+
+            if ( value == null || value.length == 0 ) {
+                DockerPort p = new DockerPort();
+                p.setContainerPort( key.getPort() );
+                p.setUdp( key.getProtocol() == InternetProtocol.UDP );
+                container.addPort( p );
+            } else {
+                for ( Ports.Binding binding : value ) {
                     DockerPort p = new DockerPort();
                     p.setContainerPort( key.getPort() );
                     p.setUdp( key.getProtocol() == InternetProtocol.UDP );
+                    p.setMachinePort( binding.getHostPort() );
                     container.addPort( p );
-                } else {
-                    for ( Ports.Binding binding : value ) {
-                        DockerPort p = new DockerPort();
-                        p.setContainerPort( key.getPort() );
-                        p.setUdp( key.getProtocol() == InternetProtocol.UDP );
-                        p.setMachinePort( binding.getHostPort() );
-                        container.addPort( p );
-                    }
                 }
-
             }
 
-            state.addContainer( container );
         }
+
+        return container;
     }
 
     private class EventMonitor implements ResultCallback<Event> {
 
+        private final AtomicBoolean ended = new AtomicBoolean( false );
+
         @Override
         public void onStart( Closeable closeable ) {
-
+            eventStreamStarted();
         }
 
         @Override
         public void onNext( Event object ) {
-            TemplateLauncherManager.getInstance().reportDockerEvent();
+            eventsReceived.increment();
+            if ( object.getTime() != null && object.getTime() > lastEventTime ) {
+                lastEventTime = object.getTime();
+            }
+            boolean relevant;
+            try {
+                relevant = handleEvent( object );
+            } catch ( Exception ex ) {
+                LoggerFactory.getLogger( getClass() ).warn( "Error updating container from docker event.", ex );
+                reconciled = false;
+                relevant = true;
+            }
+            if ( relevant ) {
+                TemplateLauncherManager.getInstance().reportDockerEvent();
+            }
         }
 
         @Override
         public void onError( Throwable throwable ) {
-            LoggerFactory.getLogger( getClass() ).warn( "Error monitoring for docker events.", throwable );
-
-            startMonitoring();
+            if ( ended.compareAndSet( false, true ) ) {
+                eventStreamEnded( throwable );
+            }
         }
 
         @Override
         public void onComplete() {
-
+            if ( ended.compareAndSet( false, true ) ) {
+                eventStreamEnded( null );
+            }
         }
 
         @Override
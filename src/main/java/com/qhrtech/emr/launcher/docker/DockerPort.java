@@ -23,19 +23,25 @@ import org.apache.commons.lang.builder.ToStringBuilder;
  */
 public class DockerPort {
 
-    private Integer machinePort;
+    private static final int NO_PORT = -1;
+
+    private int machinePort = NO_PORT;
     private int containerPort;
     private boolean udp;
 
     public DockerPort() {
     }
 
+    /**
+     * @return the port on the docker host, or null if the port is not
+     *         published.
+     */
     public Integer getMachinePort() {
-        return machinePort;
+        return machinePort != NO_PORT ? machinePort : null;
     }
 
     public void setMachinePort( Integer machinePort ) {
-        this.machinePort = machinePort;
+        this.machinePort = machinePort != null ? machinePort : NO_PORT;
     }
 
     public int getContainerPort() {
@@ -56,7 +62,11 @@ public class DockerPort {
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString( this );
+        return new ToStringBuilder( this )
+                .append( "machinePort", getMachinePort() )
+                .append( "containerPort", containerPort )
+                .append( "udp", udp )
+                .toString();
     }
 
 }
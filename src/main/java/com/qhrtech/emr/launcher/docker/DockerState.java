@@ -16,15 +16,30 @@
 package com.qhrtech.emr.launcher.docker;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
+ * The containers collected from every docker host for one generation.
+ *
+ * The state also offers a few indexes over the containers, which are built
+ * the first time any of them is asked for and then shared by every generator
+ * in the generation, so generators can do keyed lookups instead of scanning
+ * every container. Adding a container discards them.
  *
  * @author Blake Dickie
  */
 public class DockerState {
 
+    public static final String VIRTUAL_HOST = "VIRTUAL_HOST";
+
     private final List<DockerContainer> containers;
+    private volatile Indexes indexes;
 
     public DockerState() {
         containers = new ArrayList<>();
@@ -34,8 +49,94 @@ public class DockerState {
         return containers;
     }
 
-    public void addContainer( DockerContainer container ) {
+    public synchronized void addContainer( DockerContainer container ) {
         containers.add( container );
+        indexes = null;
+    }
+
+    /**
+     * Finds a container by its id.
+     *
+     * @param containerId the full container id.
+     *
+     * @return the container, or null if there is none with that id.
+     */
+    public DockerContainer getContainer( String containerId ) {
+        return indexes().byId.get( containerId );
+    }
+
+    /**
+     * Gets the hosts named in every environment variable starting with
+     * VIRTUAL_HOST, exactly as they were written. Each container is listed
+     * once per variable naming the host.
+     *
+     * @return the bindings for each host, sorted by host.
+     */
+    public Map<String, List<VirtualHostBinding>> getVirtualHostBindings() {
+        return indexes().bindings;
+    }
+
+    /**
+     * Gets the containers for each virtual host, from every environment
+     * variable starting with VIRTUAL_HOST. A variable may list several hosts
+     * separated by commas.
+     *
+     * @return the containers by virtual host, sorted by host.
+     */
+    public Map<String, List<DockerContainer>> getContainersByVirtualHost() {
+        return indexes().byVirtualHost;
+    }
+
+    /**
+     * @return the containers that set each environment variable, sorted by
+     *         variable name.
+     */
+    public Map<String, List<DockerContainer>> getContainersByEnv() {
+        return indexes().byEnv;
+    }
+
+    /**
+     * Gets the containers that set any environment variable starting with a
+     * prefix.
+     *
+     * @param prefix the start of the variable names.
+     *
+     * @return the containers for each matching variable, sorted by variable
+     *         name.
+     */
+    public SortedMap<String, List<DockerContainer>> getContainersWithEnvPrefix( String prefix ) {
+        // Every name starting with the prefix sorts before the prefix followed
+        // by the largest char.
+        return Collections.unmodifiableSortedMap( indexes().envTree.subMap( prefix, true, prefix + Character.MAX_VALUE, false ) );
+    }
+
+    /**
+     * @return the containers on each docker host, sorted by host.
+     */
+    public Map<String, List<DockerContainer>> getContainersByDockerHost() {
+        return indexes().byDockerHost;
+    }
+
+    /**
+     * @return the containers that expose each port, keyed in the docker form
+     *         "80/tcp" or "53/udp".
+     */
+    public Map<String, List<DockerContainer>> getContainersByExposedPort() {
+        return indexes().byExposedPort;
+    }
+
+    private Indexes indexes() {
+        Indexes current = indexes;
+        if ( current == null ) {
+            synchronized ( this ) {
+                current = indexes;
+                if ( current == null ) {
+                    current = new Indexes( containers );
+                    indexes = current;
+                }
+            }
+        }
+        return current;
     }
 
     @Override
@@ -43,4 +144,92 @@ public class DockerState {
         return containers.toString();
     }
 
+    private static class Indexes {
+
+        private final Map<String, DockerContainer> byId;
+        private final Map<String, List<VirtualHostBinding>> bindings;
+        private final Map<String, List<DockerContainer>> byVirtualHost;
+        private final NavigableMap<String, List<DockerContainer>> envTree;
+        private final Map<String, List<DockerContainer>> byEnv;
+        private final Map<String, List<DockerContainer>> byDockerHost;
+        private final Map<String, List<DockerContainer>> byExposedPort;
+
+        public Indexes( List<DockerContainer> containers ) {
+            Map<String, DockerContainer> ids = new HashMap<>();
+            Map<String, List<VirtualHostBinding>> hostBindings = new TreeMap<>();
+            Map<String, List<DockerContainer>> virtualHosts = new TreeMap<>();
+            NavigableMap<String, List<DockerContainer>> env = new TreeMap<>();
+            Map<String, List<DockerContainer>> dockerHosts = new TreeMap<>();
+            Map<String, List<DockerContainer>> exposedPorts = new TreeMap<>();
+
+            for ( DockerContainer container : containers ) {
+                if ( container.getContainerId() != null && !ids.containsKey( container.getContainerId() ) ) {
+                    ids.put( container.getContainerId(), container );
+                }
+                if ( container.getEnvironment() != null ) {
+                    // The environment iterates in variable order, so the
+                    // bindings of one container always come out in that order.
+                    for ( Map.Entry<String, String> entry : container.getEnvironment().entrySet() ) {
+                        add( env, entry.getKey(), container );
+                        if ( entry.getKey().startsWith( VIRTUAL_HOST ) && entry.getValue() != null ) {
+                            String suffix = entry.getKey().substring( VIRTUAL_HOST.length() );
+                            for ( String host : entry.getValue().split( "," ) ) {
+                                List<VirtualHostBinding> list = hostBindings.get( host );
+                                if ( list == null ) {
+                                    list = new ArrayList<>();
+                                    hostBindings.put( host, list );
+                                }
+                                list.add( new VirtualHostBinding( host, suffix, container ) );
+
+                                host = host.trim();
+                                if ( !host.isEmpty() ) {
+                                    add( virtualHosts, host, container );
+                                }
+                            }
+                        }
+                    }
+                }
+                if ( container.getMachineHostname() != null ) {
+                    add( dockerHosts, container.getMachineHostname(), container );
+                }
+                for ( DockerPort port : container.getPorts() ) {
+                    add( exposedPorts, port.getContainerPort() + ( port.isUdp() ? "/udp" : "/tcp" ), container );
+                }
+            }
+
+            for ( Map.Entry<String, List<VirtualHostBinding>> entry : hostBindings.entrySet() ) {
+                entry.setValue( Collections.unmodifiableList( entry.getValue() ) );
+            }
+
+            byId = Collections.unmodifiableMap( ids );
+            bindings = Collections.unmodifiableMap( hostBindings );
+            byVirtualHost = freeze( virtualHosts );
+            envTree = env;
+            byEnv = freeze( env );
+            byDockerHost = freeze( dockerHosts );
+            byExposedPort = freeze( exposedPorts );
+        }
+
+        private static void add( Map<String, List<DockerContainer>> index, String key, DockerContainer container ) {
+            List<DockerContainer> list = index.get( key );
+            if ( list == null ) {
+                list = new ArrayList<>();
+                index.put( key, list );
+            }
+            // A container can match the same key more than once, such as a
+            // host listed in two VIRTUAL_HOST variables.
+            if ( list.isEmpty() || list.get( list.size() - 1 ) != container ) {
+                list.add( container );
+            }
+        }
+
+        private static Map<String, List<DockerContainer>> freeze( Map<String, List<DockerContainer>> index ) {
+            for ( Map.Entry<String, List<DockerContainer>> entry : index.entrySet() ) {
+                entry.setValue( Collections.unmodifiableList( entry.getValue() ) );
+            }
+            return Collections.unmodifiableMap( index );
+        }
+
+    }
+
 }
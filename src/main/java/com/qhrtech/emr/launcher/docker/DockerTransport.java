@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DockerClientBuilder;
+import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerjava.jaxrs.DockerCmdExecFactoryImpl;
+import java.io.File;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Connection settings shared by the docker instances: timeouts, how many
+ * connections each instance may keep open to its daemon, and how many
+ * requests may be in flight across every daemon at once.
+ *
+ * Each instance gets a pooled client for its requests and a second client
+ * for the event stream. The event client has no read timeout, since the
+ * stream is expected to sit idle between events.
+ *
+ * @author Blake Dickie
+ */
+public class DockerTransport {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    public static final int DEFAULT_READ_TIMEOUT = 30000;
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+
+    private static final DockerTransport DEFAULT = new DockerTransport();
+
+    /**
+     * @return the settings used by instances that are not given any.
+     */
+    public static DockerTransport getDefault() {
+        return DEFAULT;
+    }
+
+    private final int maxConnections;
+    private final Semaphore connections;
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int readTimeout = DEFAULT_READ_TIMEOUT;
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    public DockerTransport() {
+        this( DEFAULT_MAX_CONNECTIONS );
+    }
+
+    /**
+     * @param maxConnections how many requests may be in flight across every
+     *                       docker daemon at once.
+     */
+    public DockerTransport( int maxConnections ) {
+        this.maxConnections = Math.max( 1, maxConnections );
+        connections = new Semaphore( this.maxConnections, true );
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @param connectTimeout the connect timeout in milliseconds, 0 to wait
+     *                       forever.
+     */
+    public void setConnectTimeout( int connectTimeout ) {
+        this.connectTimeout = Math.max( 0, connectTimeout );
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets how long a request may wait for data from a daemon, so a hung
+     * daemon fails the request rather than stalling the generation.
+     *
+     * @param readTimeout the read timeout in milliseconds, 0 to wait forever.
+     */
+    public void setReadTimeout( int readTimeout ) {
+        this.readTimeout = Math.max( 0, readTimeout );
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * @param maxConnectionsPerHost how many connections each instance keeps to
+     *                              its daemon.
+     */
+    public void setMaxConnectionsPerHost( int maxConnectionsPerHost ) {
+        this.maxConnectionsPerHost = Math.max( 1, maxConnectionsPerHost );
+    }
+
+    /**
+     * Builds a client for requests to a daemon.
+     *
+     * @param uri         the address of the docker API.
+     * @param dockerCerts the directory with the client certificates, or null.
+     *
+     * @return the client.
+     */
+    public DockerClient createClient( String uri, File dockerCerts ) {
+        DockerCmdExecFactoryImpl factory = new DockerCmdExecFactoryImpl()
+                .withConnectTimeout( connectTimeout )
+                .withReadTimeout( readTimeout )
+                .withMaxTotalConnections( maxConnectionsPerHost )
+                .withMaxPerRouteConnections( maxConnectionsPerHost );
+        return DockerClientBuilder.getInstance( createConfig( uri, dockerCerts ) )
+                .withDockerCmdExecFactory( factory )
+                .build();
+    }
+
+    /**
+     * Builds a client for the event stream of a daemon.
+     *
+     * @param uri         the address of the docker API.
+     * @param dockerCerts the directory with the client certificates, or null.
+     *
+     * @return the client.
+     */
+    public DockerClient createEventClient( String uri, File dockerCerts ) {
+        DockerCmdExecFactoryImpl factory = new DockerCmdExecFactoryImpl()
+                .withConnectTimeout( connectTimeout )
+                .withMaxTotalConnections( 1 )
+                .withMaxPerRouteConnections( 1 );
+        return DockerClientBuilder.getInstance( createConfig( uri, dockerCerts ) )
+                .withDockerCmdExecFactory( factory )
+                .build();
+    }
+
+    private DockerClientConfig createConfig( String uri, File dockerCerts ) {
+        DockerClientConfig.DockerClientConfigBuilder confBuilder =
+                                                     DockerClientConfig.createDefaultConfigBuilder()
+                                                     .withUri( uri );
+        if ( dockerCerts != null ) {
+            confBuilder.withSSLConfig( new SharedSSLConfig( dockerCerts.getPath() ) );
+        }
+        return confBuilder.build();
+    }
+
+    /**
+     * Waits for one of the shared connections. Every call must be matched by
+     * a call to {@link #release()}. The read timeout bounds how long a
+     * connection can be held, so the wait is not interruptible.
+     */
+    public void acquire() {
+        connections.acquireUninterruptibly();
+    }
+
+    public void release() {
+        connections.release();
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.docker;
+
+import com.github.dockerjava.api.model.Event;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which docker events are worth regenerating for.
+ *
+ * Events are matched on their type and action. The docker events API used
+ * here only reports a status, so the action is the status up to any colon
+ * (for example "exec_create: sh" is "exec_create") and the type is inferred:
+ * container events always carry the image they came from, other events do
+ * not.
+ *
+ * Matching events must also affect a container with an environment variable
+ * starting with one of the configured prefixes, either before or after the
+ * event. A prefix of "*" treats every container as relevant.
+ *
+ * @author Blake Dickie
+ */
+public class EventFilter {
+
+    public static final String TYPE_CONTAINER = "container";
+    public static final String TYPE_IMAGE = "image";
+    public static final String ANY_CONTAINER = "*";
+
+    public static final List<String> DEFAULT_TYPES = Arrays.asList( TYPE_CONTAINER );
+    /**
+     * Actions after which the container is inspected again.
+     */
+    public static final List<String> REFRESH_ACTIONS = Arrays.asList( "start", "restart", "unpause", "update", "rename" );
+    /**
+     * Actions after which the container is dropped from the cache.
+     */
+    public static final List<String> REMOVE_ACTIONS = Arrays.asList( "die", "destroy" );
+    /**
+     * Every action the container cache handles. Other actions leave the
+     * cache as it was, so regenerating for them changes nothing.
+     */
+    public static final List<String> DEFAULT_ACTIONS = join( REFRESH_ACTIONS, REMOVE_ACTIONS );
+    public static final List<String> DEFAULT_ENV_PREFIXES = Arrays.asList( "VIRTUAL_HOST" );
+
+    private final Set<String> types;
+    private final Set<String> actions;
+    private final List<String> envPrefixes;
+
+    public EventFilter() {
+        this( DEFAULT_TYPES, DEFAULT_ACTIONS, DEFAULT_ENV_PREFIXES );
+    }
+
+    public EventFilter( Collection<String> types, Collection<String> actions, Collection<String> envPrefixes ) {
+        this.types = new HashSet<>( types );
+        this.actions = new HashSet<>( actions );
+        if ( envPrefixes.contains( ANY_CONTAINER ) ) {
+            this.envPrefixes = null;
+        } else {
+            this.envPrefixes = new ArrayList<>( envPrefixes );
+        }
+    }
+
+    private static List<String> join( List<String> first, List<String> second ) {
+        List<String> result = new ArrayList<>( first );
+        result.addAll( second );
+        return Collections.unmodifiableList( result );
+    }
+
+    public static String getAction( Event event ) {
+        String status = event.getStatus();
+        if ( status == null ) {
+            return null;
+        }
+        int colon = status.indexOf( ':' );
+        if ( colon >= 0 ) {
+            status = status.substring( 0, colon );
+        }
+        return status.trim();
+    }
+
+    public static String getType( Event event ) {
+        return event.getFrom() != null ? TYPE_CONTAINER : TYPE_IMAGE;
+    }
+
+    /**
+     * Checks the event type and action.
+     *
+     * @param event the event received from docker.
+     *
+     * @return true if the event is of interest.
+     */
+    public boolean accepts( Event event ) {
+        return types.contains( getType( event ) ) && actions.contains( getAction( event ) );
+    }
+
+    /**
+     * Checks whether the container affected by an event is of interest.
+     *
+     * @param previous the container before the event, or null if unknown.
+     * @param current  the container after the event, or null if it is gone.
+     *
+     * @return true if either version of the container is of interest.
+     */
+    public boolean isRelevant( DockerContainer previous, DockerContainer current ) {
+        if ( envPrefixes == null ) {
+            return true;
+        }
+        return hasEnvPrefix( previous ) || hasEnvPrefix( current );
+    }
+
+    private boolean hasEnvPrefix( DockerContainer container ) {
+        if ( container == null || container.getEnvironment() == null ) {
+            return false;
+        }
+        for ( String name : container.getEnvironment().keySet() ) {
+            for ( String prefix : envPrefixes ) {
+                if ( name.startsWith( prefix ) ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
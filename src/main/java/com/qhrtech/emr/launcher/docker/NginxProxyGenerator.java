@@ -15,49 +15,210 @@
  */
 package com.qhrtech.emr.launcher.docker;
 
-import com.qhrtech.emr.launcher.Generator;
+import com.qhrtech.emr.launcher.FileSystemMonitor;
+import com.qhrtech.emr.launcher.OutputSink;
+import com.qhrtech.emr.launcher.WatchableGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  *
  * @author Blake Dickie
  */
-public class NginxProxyGenerator implements Generator {
+public class NginxProxyGenerator implements WatchableGenerator {
+
+    /**
+     * The certificate served to requests for unknown hosts if it exists,
+     * otherwise the first certificate by name is used.
+     */
+    public static final String DEFAULT_CERT = "default";
+
+    public static final String CONF_EXTENSION = ".conf";
+
+    public static final String BALANCE_ROUND_ROBIN = "round_robin";
+    public static final String BALANCE_LEAST_CONN = "least_conn";
+    public static final String BALANCE_IP_HASH = "ip_hash";
+
+    public static final String DEFAULT_CACHE_DIR = "/var/cache/nginx";
+    public static final String DEFAULT_CACHE_VALID = "10m";
+
+    private static final String UPSTREAM_SUFFIX = "_backend";
+    private static final String CACHE_SUFFIX = "_cache";
+
+    /**
+     * Values copied from the container environment into the configuration
+     * are limited to what nginx sizes, times and status lists need.
+     */
+    private static final Pattern SETTING_PATTERN = Pattern.compile( "[A-Za-z0-9 ]+" );
+
+    /**
+     * Characters that have to be escaped when a hostname is used in an
+     * upstream or cache zone name. The underscore is the escape character, so
+     * it is escaped as well.
+     */
+    private static final Pattern NAME_ESCAPE_PATTERN = Pattern.compile( "[^A-Za-z0-9.-]" );
+
+    /**
+     * Orders the replicas of a hostname, the first one provides the settings
+     * for the host.
+     */
+    private static final Comparator<HostEnvironment> REPLICA_ORDER = new Comparator<HostEnvironment>() {
+
+        @Override
+        public int compare( HostEnvironment o1, HostEnvironment o2 ) {
+            int result = o1.container.getMachineHostname().compareTo( o2.container.getMachineHostname() );
+            if ( result == 0 ) {
+                result = o1.container.getContainerId().compareTo( o2.container.getContainerId() );
+            }
+            if ( result == 0 ) {
+                result = o1.suffix.compareTo( o2.suffix );
+            }
+            return result;
+        }
+    };
 
     private final Logger log = LoggerFactory.getLogger( getClass() );
 
     private final File outputFile;
     private final File certsFile;
     private final File configsFile;
+    private final CertificateIndex certIndex;
+    private final Map<String, Boolean> includeCache = new ConcurrentHashMap<>();
+    private volatile boolean certsWatched = false;
+    private volatile boolean configsWatched = false;
+    private String balanceMethod = BALANCE_ROUND_ROBIN;
+    private int keepalive = 0;
+    private File cacheDir = new File( DEFAULT_CACHE_DIR );
 
     public NginxProxyGenerator( File outputFile, File certsFile, File configsFile ) {
         this.outputFile = outputFile;
         this.certsFile = certsFile;
         this.configsFile = configsFile;
+        if ( certsFile != null ) {
+            certIndex = new CertificateIndex( certsFile );
+        } else {
+            certIndex = new CertificateIndex( Collections.<String>emptyList() );
+        }
+    }
+
+    public String getBalanceMethod() {
+        return balanceMethod;
+    }
+
+    /**
+     * Sets how requests are spread across the containers serving a host,
+     * unless a container overrides it with PROXY_BALANCE.
+     *
+     * @param balanceMethod round_robin, least_conn or ip_hash.
+     */
+    public void setBalanceMethod( String balanceMethod ) {
+        this.balanceMethod = balanceMethod;
     }
 
-    private Set<String> detectCurrentCertificates() {
-        if ( certsFile == null ) {
-            return Collections.EMPTY_SET;
+    public int getKeepalive() {
+        return keepalive;
+    }
+
+    /**
+     * Sets how many idle connections to the containers of each host nginx
+     * keeps open for reuse.
+     *
+     * @param keepalive the number of idle connections, 0 to disable.
+     */
+    public void setKeepalive( int keepalive ) {
+        this.keepalive = keepalive;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Sets the directory the response caches of hosts with PROXY_CACHE are
+     * stored under, each host gets its own sub-directory.
+     *
+     * @param cacheDir the cache directory.
+     */
+    public void setCacheDir( File cacheDir ) {
+        this.cacheDir = cacheDir;
+    }
+
+    @Override
+    public void registerWatches( FileSystemMonitor monitor ) {
+        if ( certsFile != null ) {
+            certsWatched = monitor.watch( certsFile, false, new FileSystemMonitor.Listener() {
+
+                @Override
+                public boolean fileChanged( File file ) {
+                    if ( file.equals( certsFile.getAbsoluteFile() ) || file.getName().toLowerCase().endsWith( CertificateIndex.CERT_EXTENSION ) ) {
+                        certIndex.invalidate();
+                        return true;
+                    }
+                    return false;
+                }
+
+                @Override
+                public void watchLost( File directory ) {
+                    certsWatched = false;
+                    certIndex.invalidate();
+                }
+            } );
         }
-        Set<String> certs = new HashSet<>();
-        for ( File file : certsFile.listFiles() ) {
-            String filename = file.getName();
-            if ( filename.toLowerCase().endsWith( ".crt" ) ) {
-                certs.add( filename.substring( 0, filename.length() - 4 ) );
-            }
+        if ( configsFile != null ) {
+            configsWatched = monitor.watch( configsFile, false, new FileSystemMonitor.Listener() {
+
+                @Override
+                public boolean fileChanged( File file ) {
+                    String name = file.getName();
+                    if ( file.equals( configsFile.getAbsoluteFile() ) ) {
+                        includeCache.clear();
+                        return true;
+                    } else if ( name.endsWith( CONF_EXTENSION ) ) {
+                        includeCache.remove( name.substring( 0, name.length() - CONF_EXTENSION.length() ) );
+                        return true;
+                    }
+                    return false;
+                }
+
+                @Override
+                public void watchLost( File directory ) {
+                    configsWatched = false;
+                    includeCache.clear();
+                }
+            } );
         }
-        return certs;
+    }
+
+    /**
+     * Checks whether a host has an include file. The answer is only cached
+     * while the include folder is being watched for changes.
+     */
+    private boolean hasInclude( String hostname, File configExtras ) {
+        if ( !configsWatched ) {
+            return configExtras.isFile();
+        }
+        Boolean exists = includeCache.get( hostname );
+        if ( exists == null ) {
+            exists = configExtras.isFile();
+            includeCache.put( hostname, exists );
+        }
+        return exists;
     }
 
     private void writeHeader( PrintWriter out, String httpsCert ) {
@@ -71,7 +232,12 @@ public class NginxProxyGenerator implements Generator {
         out.println( "# Connection header that may have been passed to this server" );
         out.println( "map $http_upgrade $proxy_connection {" );
         out.println( "  default upgrade;" );
-        out.println( "  '' close;" );
+        if ( keepalive > 0 ) {
+            // Upstream keepalive only works if the connection is not closed.
+            out.println( "  '' '';" );
+        } else {
+            out.println( "  '' close;" );
+        }
         out.println( "}" );
 
         out.println( "gzip_types text/plain text/css application/javascript application/json application/x-javascript text/xml application/xml application/xml+rss text/javascript;" );
@@ -105,7 +271,7 @@ public class NginxProxyGenerator implements Generator {
         out.println( "}" );
     }
 
-    private void writeSegment( PrintWriter out, String hostname, String sslCert, boolean redirect, boolean errorResponse, String exposedIp, int exposedPort, String proxyType ) throws IOException {
+    private void writeSegment( PrintWriter out, String hostname, String sslCert, boolean redirect, boolean errorResponse, String proxyTarget, HostEnvironment env ) throws IOException {
         out.println( "server {" );
         if ( sslCert == null ) {
             out.println( "  listen 80;" );
@@ -130,103 +296,216 @@ public class NginxProxyGenerator implements Generator {
             out.println( "  return 404;" );
         } else {
 
-            File configExtras = new File( configsFile, hostname + ".conf" );
-            if ( configExtras.isFile() ) {
+            File configExtras = new File( configsFile, hostname + CONF_EXTENSION );
+            if ( hasInclude( hostname, configExtras ) ) {
                 out.println( "  include " + configExtras.getAbsolutePath() + ";" );
             }
 
             out.println( "  location / {" );
-            out.println( "    proxy_pass " + proxyType + "://" + exposedIp + ":" + exposedPort + ";" );
+            out.println( "    proxy_pass " + proxyTarget + ";" );
+            writeLocationSettings( out, env );
             out.println( "  }" );
         }
         out.println( "}" );
     }
 
-    private void writeEnvironment( PrintWriter out, Set<String> certs, HostEnvironment env ) throws IOException {
-        int port = Integer.parseInt( env.getPort() );
-        DockerPort portInfo = env.container.findPort( port );
-        if ( portInfo == null ) {
-            log.error( "Port Not Exposed: " + env.host + ":" + port );
+    /**
+     * Builds an upstream or cache zone name from a hostname. Other characters
+     * are escaped rather than replaced, so different hostnames always get
+     * different names: "_" and two hex digits, or "_u" and four hex digits
+     * outside Latin-1.
+     *
+     * @param hostname the hostname.
+     * @param suffix   the suffix for the kind of name.
+     *
+     * @return the name.
+     */
+    static String nginxName( String hostname, String suffix ) {
+        Matcher matcher = NAME_ESCAPE_PATTERN.matcher( hostname );
+        if ( !matcher.find() ) {
+            return hostname + suffix;
+        }
+        StringBuilder name = new StringBuilder( hostname.length() + 16 );
+        int last = 0;
+        do {
+            char c = hostname.charAt( matcher.start() );
+            name.append( hostname, last, matcher.start() );
+            name.append( c < 0x100 ? String.format( "_%02x", (int) c ) : String.format( "_u%04x", (int) c ) );
+            last = matcher.end();
+        } while ( matcher.find() );
+        name.append( hostname, last, hostname.length() );
+        return name.append( suffix ).toString();
+    }
+
+    private void writeCachePath( PrintWriter out, HostEnvironment env ) {
+        String zoneSize = env.getSetting( "PROXY_CACHE" );
+        if ( zoneSize == null ) {
             return;
         }
+        String path = new File( cacheDir, env.getCacheZone() ).getAbsolutePath();
+        StringBuilder line = new StringBuilder( "proxy_cache_path " );
+        line.append( path ).append( " levels=1:2 keys_zone=" ).append( env.getCacheZone() ).append( ':' ).append( zoneSize );
+        String maxSize = env.getSetting( "PROXY_CACHE_MAX_SIZE" );
+        if ( maxSize != null ) {
+            line.append( " max_size=" ).append( maxSize );
+        }
+        String inactive = env.getSetting( "PROXY_CACHE_INACTIVE" );
+        if ( inactive != null ) {
+            line.append( " inactive=" ).append( inactive );
+        }
+        line.append( ';' );
+        out.println( line );
+    }
+
+    private void writeLocationSettings( PrintWriter out, HostEnvironment env ) {
+        String buffering = env.getSetting( "PROXY_BUFFERING" );
+        boolean cached = env.getSetting( "PROXY_CACHE" ) != null;
+        if ( buffering == null && cached ) {
+            // Responses can only be cached when they are buffered.
+            buffering = "on";
+        }
+        if ( buffering != null ) {
+            out.println( "    proxy_buffering " + buffering + ";" );
+        }
+
+        String bodyBuffer = env.getSetting( "CLIENT_BODY_BUFFER_SIZE" );
+        if ( bodyBuffer != null ) {
+            out.println( "    client_body_buffer_size " + bodyBuffer + ";" );
+        }
+
+        if ( cached ) {
+            out.println( "    proxy_cache " + env.getCacheZone() + ";" );
+            out.println( "    proxy_cache_valid " + env.getSettingWithDefault( "PROXY_CACHE_VALID", DEFAULT_CACHE_VALID ) + ";" );
+        }
+    }
+
+    private void writeUpstream( PrintWriter out, String upstreamName, String balanceMethod, Map<String, Integer> servers ) {
+        out.println( "upstream " + upstreamName + " {" );
+        if ( !balanceMethod.equals( BALANCE_ROUND_ROBIN ) ) {
+            out.println( "  " + balanceMethod + ";" );
+        }
+        for ( Map.Entry<String, Integer> server : servers.entrySet() ) {
+            if ( server.getValue() == 1 ) {
+                out.println( "  server " + server.getKey() + ";" );
+            } else {
+                out.println( "  server " + server.getKey() + " weight=" + server.getValue() + ";" );
+            }
+        }
+        if ( keepalive > 0 ) {
+            out.println( "  keepalive " + keepalive + ";" );
+        }
+        out.println( "}" );
+    }
+
+    private void writeEnvironment( PrintWriter out, CertificateIndex certs, String hostname, List<HostEnvironment> replicas ) throws IOException {
+        // Every replica contributes a server, but the host level settings
+        // come from the first replica.
+        HostEnvironment env = replicas.get( 0 );
+
+        Map<String, Integer> servers = new TreeMap<>();
+        for ( HostEnvironment replica : replicas ) {
+            int port = Integer.parseInt( replica.getPort() );
+            DockerPort portInfo = replica.container.findPort( port );
+            if ( portInfo == null || portInfo.getMachinePort() == null ) {
+                log.error( "Port Not Exposed: " + hostname + ":" + port + " on " + replica.container.getContainerId() );
+                continue;
+            }
+            String address = replica.container.getMachineHostname() + ":" + portInfo.getMachinePort();
+            if ( !servers.containsKey( address ) ) {
+                servers.put( address, replica.getWeight() );
+            }
+        }
+        if ( servers.isEmpty() ) {
+            return;
+        }
+
+        String upstreamName = nginxName( hostname, UPSTREAM_SUFFIX );
+        writeCachePath( out, env );
+        writeUpstream( out, upstreamName, env.getBalanceMethod(), servers );
+        String proxyTarget = env.getProxyType() + "://" + upstreamName;
 
         String cert = env.detectCert( certs );
 
         if ( env.httpMode.equals( "auto" ) ) {
             if ( cert == null ) {
-                writeSegment( out, env.host, null, false, false, env.container.getMachineHostname(), portInfo.getMachinePort(), env.getProxyType() );
+                writeSegment( out, hostname, null, false, false, proxyTarget, env );
             } else {
-                writeSegment( out, env.host, null, true, false, env.container.getMachineHostname(), portInfo.getMachinePort(), env.getProxyType() );
+                writeSegment( out, hostname, null, true, false, proxyTarget, env );
             }
         } else if ( env.httpMode.equals( "enabled" ) ) {
-            writeSegment( out, env.host, null, false, false, env.container.getMachineHostname(), portInfo.getMachinePort(), env.getProxyType() );
+            writeSegment( out, hostname, null, false, false, proxyTarget, env );
         }
 
         if ( cert != null ) {
             if ( env.httpsMode.equals( "auto" ) || env.httpsMode.equals( "enabled" ) ) {
-                writeSegment( out, env.host, cert, false, false, env.container.getMachineHostname(), portInfo.getMachinePort(), env.getProxyType() );
+                writeSegment( out, hostname, cert, false, false, proxyTarget, env );
             }
         }
     }
 
     private void doGenerate( PrintWriter out, DockerState state ) throws Exception {
-        Set<String> certs = detectCurrentCertificates();
+        if ( !certsWatched ) {
+            certIndex.invalidate();
+        }
+        certIndex.refreshIfChanged();
+        SortedSet<String> certNames = certIndex.getCertificates();
 
         String fallbackCert = null;
-        if ( !certs.isEmpty() ) {
-            fallbackCert = certs.iterator().next();
+        if ( certNames.contains( DEFAULT_CERT ) ) {
+            fallbackCert = DEFAULT_CERT;
+        } else if ( !certNames.isEmpty() ) {
+            fallbackCert = certNames.first();
         }
 
         writeHeader( out, fallbackCert );
 
-        Map<String, HostEnvironment> environments = new HashMap<>();
-
-        for ( DockerContainer c : state.getContainers() ) {
-            for ( Map.Entry<String, String> entry : c.getEnvironment().entrySet() ) {
-                String envName = entry.getKey();
-                String envValue = entry.getValue();
-
-                if ( envName.startsWith( "VIRTUAL_HOST" ) ) {
-                    for ( String hostname : envValue.split( "," ) ) {
-                        HostEnvironment env = new HostEnvironment( hostname, envName.substring( 12 ), c );
-                        environments.put( hostname, env );
-                    }
-                }
+        // Everything is sorted so the same containers always produce the same
+        // file, whatever order docker reported them in. The bindings are
+        // already sorted by host.
+        for ( Map.Entry<String, List<VirtualHostBinding>> entry : state.getVirtualHostBindings().entrySet() ) {
+            List<HostEnvironment> replicas = new ArrayList<>( entry.getValue().size() );
+            for ( VirtualHostBinding binding : entry.getValue() ) {
+                replicas.add( new HostEnvironment( binding.getHost(), binding.getSuffix(), binding.getContainer() ) );
             }
-        }
-
-        for ( HostEnvironment env : environments.values() ) {
-            writeEnvironment( out, certs, env );
+            Collections.sort( replicas, REPLICA_ORDER );
+            writeEnvironment( out, certIndex, entry.getKey(), replicas );
         }
 
     }
 
     @Override
-    public Map<File, byte[]> generate( DockerState state ) throws Exception {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        try ( PrintWriter writer = new PrintWriter( bout ) ) {
+    public void generate( DockerState state, OutputSink sink ) throws Exception {
+        try ( PrintWriter writer = new PrintWriter( new BufferedWriter( new OutputStreamWriter( sink.open( outputFile ), StandardCharsets.UTF_8 ) ) ) ) {
             doGenerate( writer, state );
+            if ( writer.checkError() ) {
+                throw new IOException( "Error writing " + outputFile );
+            }
         }
-        return Collections.singletonMap( outputFile, bout.toByteArray() );
     }
 
     private class HostEnvironment {
 
         private final String host;
+        private final String suffix;
         private final String port;
         private final String httpsMode;
         private final String httpMode;
         private final String sslCert;
         private final String proxyType;
+        private final String balanceMethod;
+        private final String weight;
         private final DockerContainer container;
 
         public HostEnvironment( String host, String suffix, DockerContainer container ) {
             this.host = host;
+            this.suffix = suffix;
             port = container.getEnvWithDefault( "VIRTUAL_PORT" + suffix, "80" );
             httpsMode = container.getEnvWithDefault( "HTTPS_MODE" + suffix, "auto" );
             httpMode = container.getEnvWithDefault( "HTTP_MODE" + suffix, "auto" );
             sslCert = container.getEnvWithDefault( "SSL_CERT" + suffix, null );
             proxyType = container.getEnvWithDefault( "PROXY_TYPE" + suffix, "http" );
+            balanceMethod = container.getEnvWithDefault( "PROXY_BALANCE" + suffix, NginxProxyGenerator.this.balanceMethod );
+            weight = container.getEnvWithDefault( "VIRTUAL_WEIGHT" + suffix, "1" );
             this.container = container;
         }
 
@@ -254,7 +533,57 @@ public class NginxProxyGenerator implements Generator {
             return proxyType;
         }
 
-        private String detectCert( Set<String> knownCerts ) {
+        public String getBalanceMethod() {
+            if ( balanceMethod.equals( BALANCE_ROUND_ROBIN ) || balanceMethod.equals( BALANCE_LEAST_CONN ) || balanceMethod.equals( BALANCE_IP_HASH ) ) {
+                return balanceMethod;
+            }
+            log.warn( "Unknown balance method for " + host + ": " + balanceMethod );
+            return BALANCE_ROUND_ROBIN;
+        }
+
+        public String getCacheZone() {
+            return nginxName( host, CACHE_SUFFIX );
+        }
+
+        /**
+         * Reads a suffixed setting for this host from the container
+         * environment.
+         *
+         * @param name the name of the variable without the host suffix.
+         *
+         * @return the value, or null if it is not set or is not valid.
+         */
+        public String getSetting( String name ) {
+            String value = container.getEnvWithDefault( name + suffix, null );
+            if ( value == null ) {
+                return null;
+            }
+            value = value.trim();
+            if ( !SETTING_PATTERN.matcher( value ).matches() ) {
+                log.warn( "Ignoring invalid " + name + suffix + " for " + host + ": " + value );
+                return null;
+            }
+            return value;
+        }
+
+        public String getSettingWithDefault( String name, String defaultValue ) {
+            String value = getSetting( name );
+            return value != null ? value : defaultValue;
+        }
+
+        public int getWeight() {
+            try {
+                int value = Integer.parseInt( weight );
+                if ( value >= 1 ) {
+                    return value;
+                }
+            } catch ( NumberFormatException ignore ) {
+            }
+            log.warn( "Invalid weight for " + host + " on " + container.getContainerId() + ": " + weight );
+            return 1;
+        }
+
+        private String detectCert( CertificateIndex knownCerts ) {
             if ( sslCert != null ) {
                 if ( sslCert.equals( "" ) ) {
                     return null;
@@ -267,17 +596,7 @@ public class NginxProxyGenerator implements Generator {
                 }
             }
 
-            String bestMatch = null;
-            for ( String cert : knownCerts ) {
-                if ( host.endsWith( cert ) ) {
-                    // Find the longest possible match.
-                    if ( bestMatch == null || bestMatch.length() < cert.length() ) {
-                        bestMatch = cert;
-                    }
-                }
-            }
-
-            return bestMatch;
+            return knownCerts.findBestMatch( host );
         }
 
     }
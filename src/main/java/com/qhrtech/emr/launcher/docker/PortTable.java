@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.docker;
+
+import java.util.List;
+
+/**
+ * Open addressing hash table from a container port and protocol to the first
+ * matching port binding. Keys are plain ints (the port shifted left with the
+ * protocol in the low bit), so lookups never box.
+ *
+ * @author Blake Dickie
+ */
+class PortTable {
+
+    private static final int EMPTY = -1;
+
+    private final int[] keys;
+    private final DockerPort[] values;
+    private final int mask;
+
+    public PortTable( List<DockerPort> ports ) {
+        int capacity = 4;
+        while ( capacity < ports.size() * 2 ) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        values = new DockerPort[capacity];
+        mask = capacity - 1;
+        for ( int i = 0; i < capacity; i++ ) {
+            keys[i] = EMPTY;
+        }
+        for ( DockerPort port : ports ) {
+            insert( key( port.getContainerPort(), port.isUdp() ), port );
+        }
+    }
+
+    public static int key( int port, boolean udp ) {
+        return port << 1 | ( udp ? 1 : 0 );
+    }
+
+    public DockerPort get( int port, boolean udp ) {
+        int key = key( port, udp );
+        for ( int slot = hash( key ) & mask;; slot = ( slot + 1 ) & mask ) {
+            int current = keys[slot];
+            if ( current == key ) {
+                return values[slot];
+            }
+            if ( current == EMPTY ) {
+                return null;
+            }
+        }
+    }
+
+    private void insert( int key, DockerPort port ) {
+        for ( int slot = hash( key ) & mask;; slot = ( slot + 1 ) & mask ) {
+            if ( keys[slot] == key ) {
+                // Keep the first binding, as the linear search did.
+                return;
+            }
+            if ( keys[slot] == EMPTY ) {
+                keys[slot] = key;
+                values[slot] = port;
+                return;
+            }
+        }
+    }
+
+    private static int hash( int key ) {
+        int h = key * 0x9E3779B9;
+        return h ^ ( h >>> 16 );
+    }
+
+}
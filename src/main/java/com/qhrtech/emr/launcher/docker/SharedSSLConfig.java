@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.docker;
+
+import com.github.dockerjava.core.LocalDirectorySSLConfig;
+import com.github.dockerjava.core.SSLConfig;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Loads the client certificates from a directory once and shares the
+ * resulting SSL context between every client using that directory. The
+ * context holds the TLS session cache, so sharing it lets new connections to
+ * a host resume an earlier session instead of doing a full handshake.
+ *
+ * @author Blake Dickie
+ */
+class SharedSSLConfig implements SSLConfig {
+
+    private static final Map<String, SSLContext> CONTEXTS = new ConcurrentHashMap<>();
+
+    private final String certPath;
+
+    public SharedSSLConfig( String certPath ) {
+        this.certPath = certPath;
+    }
+
+    @Override
+    public SSLContext getSSLContext() throws KeyManagementException, UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException {
+        synchronized ( CONTEXTS ) {
+            SSLContext context = CONTEXTS.get( certPath );
+            if ( context == null ) {
+                context = new LocalDirectorySSLConfig( certPath ).getSSLContext();
+                if ( context != null ) {
+                    CONTEXTS.put( certPath, context );
+                }
+            }
+            return context;
+        }
+    }
+
+}
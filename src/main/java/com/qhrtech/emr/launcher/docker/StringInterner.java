@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.docker;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Shares one copy of equal strings, such as the environment variables that
+ * every replica of an image has. Unlike {@link String#intern()} the strings
+ * are only held weakly, so values that no container uses any more can be
+ * collected.
+ *
+ * @author Blake Dickie
+ */
+class StringInterner {
+
+    private static final StringInterner INSTANCE = new StringInterner();
+
+    public static StringInterner getInstance() {
+        return INSTANCE;
+    }
+
+    private final Map<String, WeakReference<String>> strings = new WeakHashMap<>();
+
+    /**
+     * Gets the shared copy of a string.
+     *
+     * @param value the string, may be null.
+     *
+     * @return an equal string, the same instance for every equal value.
+     */
+    public synchronized String intern( String value ) {
+        if ( value == null ) {
+            return null;
+        }
+        WeakReference<String> ref = strings.get( value );
+        String shared = ref != null ? ref.get() : null;
+        if ( shared == null ) {
+            shared = value;
+            strings.put( shared, new WeakReference<>( shared ) );
+        }
+        return shared;
+    }
+
+    public synchronized int size() {
+        return strings.size();
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.docker;
+
+/**
+ * One host named in a container's VIRTUAL_HOST variables. The suffix is the
+ * part of the variable name after VIRTUAL_HOST, so VIRTUAL_HOST_2 binds with
+ * the suffix "_2" and its settings are read from VIRTUAL_PORT_2 and so on.
+ *
+ * @author Blake Dickie
+ */
+public class VirtualHostBinding {
+
+    private final String host;
+    private final String suffix;
+    private final DockerContainer container;
+
+    public VirtualHostBinding( String host, String suffix, DockerContainer container ) {
+        this.host = host;
+        this.suffix = suffix;
+        this.container = container;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public DockerContainer getContainer() {
+        return container;
+    }
+
+    @Override
+    public String toString() {
+        return host + " -> " + container.getContainerId() + " (" + DockerState.VIRTUAL_HOST + suffix + ")";
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.metrics;
+
+import java.util.Map;
+
+/**
+ * A value that is read from its owner whenever the metrics are collected.
+ *
+ * @author Blake Dickie
+ */
+public abstract class Gauge extends Metric {
+
+    public Gauge( String name, String help, String... labels ) {
+        super( name, help, labels );
+    }
+
+    public abstract long getValue();
+
+    @Override
+    public Type getType() {
+        return Type.GAUGE;
+    }
+
+    @Override
+    public void collect( Map<String, Number> samples ) {
+        samples.put( sampleName( "", null, null ), getValue() );
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram with fixed bucket bounds. Recording a value is a binary search
+ * and two atomic increments, so it never locks or allocates.
+ *
+ * Values are recorded as longs in whatever unit the bounds are in and divided
+ * by the divisor when they are exported, so timers can record nanoseconds and
+ * still export seconds.
+ *
+ * @author Blake Dickie
+ */
+public class Histogram extends Metric {
+
+    /**
+     * Bucket bounds for latencies, in nanoseconds.
+     */
+    public static final long[] LATENCY_BOUNDS = {
+        TimeUnit.MICROSECONDS.toNanos( 100 ),
+        TimeUnit.MICROSECONDS.toNanos( 250 ),
+        TimeUnit.MICROSECONDS.toNanos( 500 ),
+        TimeUnit.MILLISECONDS.toNanos( 1 ),
+        TimeUnit.MICROSECONDS.toNanos( 2500 ),
+        TimeUnit.MILLISECONDS.toNanos( 5 ),
+        TimeUnit.MILLISECONDS.toNanos( 10 ),
+        TimeUnit.MILLISECONDS.toNanos( 25 ),
+        TimeUnit.MILLISECONDS.toNanos( 50 ),
+        TimeUnit.MILLISECONDS.toNanos( 100 ),
+        TimeUnit.MILLISECONDS.toNanos( 250 ),
+        TimeUnit.MILLISECONDS.toNanos( 500 ),
+        TimeUnit.SECONDS.toNanos( 1 ),
+        TimeUnit.MILLISECONDS.toNanos( 2500 ),
+        TimeUnit.SECONDS.toNanos( 5 ),
+        TimeUnit.SECONDS.toNanos( 10 ),
+        TimeUnit.SECONDS.toNanos( 30 )
+    };
+
+    /**
+     * Bucket bounds for sizes, in bytes.
+     */
+    public static final long[] SIZE_BOUNDS = {
+        256, 1024, 4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024,
+        1024 * 1024, 4 * 1024 * 1024, 16 * 1024 * 1024
+    };
+
+    public static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final long[] bounds;
+    private final long divisor;
+    private final AtomicLongArray buckets;
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * @param name    the metric name.
+     * @param help    a description of the metric.
+     * @param bounds  the upper bound of each bucket, in increasing order.
+     * @param divisor the value recorded values are divided by when exported.
+     * @param labels  label names and values, alternating.
+     */
+    public Histogram( String name, String help, long[] bounds, long divisor, String... labels ) {
+        super( name, help, labels );
+        for ( int i = 1; i < bounds.length; i++ ) {
+            if ( bounds[i] <= bounds[i - 1] ) {
+                throw new IllegalArgumentException( "Bucket bounds must be increasing." );
+            }
+        }
+        this.bounds = bounds.clone();
+        this.divisor = divisor;
+        buckets = new AtomicLongArray( bounds.length + 1 );
+    }
+
+    public void record( long value ) {
+        int index = Arrays.binarySearch( bounds, value );
+        if ( index < 0 ) {
+            index = -index - 1;
+        }
+        buckets.incrementAndGet( index );
+        sum.addAndGet( value );
+    }
+
+    /**
+     * Records the time elapsed since a start time.
+     *
+     * @param startNanos the start time from {@link System#nanoTime()}.
+     */
+    public void recordSince( long startNanos ) {
+        record( System.nanoTime() - startNanos );
+    }
+
+    public long getCount() {
+        long count = 0;
+        for ( int i = 0; i < buckets.length(); i++ ) {
+            count += buckets.get( i );
+        }
+        return count;
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    @Override
+    public Type getType() {
+        return Type.HISTOGRAM;
+    }
+
+    @Override
+    public void collect( Map<String, Number> samples ) {
+        long cumulative = 0;
+        for ( int i = 0; i < bounds.length; i++ ) {
+            cumulative += buckets.get( i );
+            samples.put( sampleName( "_bucket", "le", formatBound( bounds[i] ) ), cumulative );
+        }
+        cumulative += buckets.get( bounds.length );
+        samples.put( sampleName( "_bucket", "le", "+Inf" ), cumulative );
+        samples.put( sampleName( "_sum", null, null ), divisor == 1 ? (Number) sum.get() : (Number) ( sum.get() / (double) divisor ) );
+        samples.put( sampleName( "_count", null, null ), cumulative );
+    }
+
+    private String formatBound( long bound ) {
+        if ( divisor == 1 ) {
+            return Long.toString( bound );
+        }
+        return Double.toString( bound / (double) divisor );
+    }
+
+}
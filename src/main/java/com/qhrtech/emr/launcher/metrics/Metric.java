@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.metrics;
+
+import java.util.Map;
+
+/**
+ * A named metric with an optional set of labels. Each metric reports one or
+ * more samples, keyed by the sample name with its labels in the Prometheus
+ * text format (for example <code>name{host="a"}</code>).
+ *
+ * @author Blake Dickie
+ */
+public abstract class Metric {
+
+    public enum Type {
+
+        COUNTER, GAUGE, HISTOGRAM;
+
+        public String getPrometheusName() {
+            return name().toLowerCase();
+        }
+
+    }
+
+    private final String name;
+    private final String help;
+    private final String[] labels;
+    private final String labelText;
+
+    /**
+     * @param name   the metric name.
+     * @param help   a description of the metric.
+     * @param labels label names and values, alternating.
+     */
+    protected Metric( String name, String help, String... labels ) {
+        if ( labels.length % 2 != 0 ) {
+            throw new IllegalArgumentException( "Labels must be name and value pairs." );
+        }
+        this.name = name;
+        this.help = help;
+        this.labels = labels.clone();
+        this.labelText = formatLabels( this.labels );
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * @return the label names and values, alternating.
+     */
+    public String[] getLabels() {
+        return labels.clone();
+    }
+
+    /**
+     * @return the key that identifies this metric in a registry.
+     */
+    public String getKey() {
+        return name + labelText;
+    }
+
+    public abstract Type getType();
+
+    /**
+     * Adds the current samples of this metric to a map.
+     *
+     * @param samples the map to add the samples to.
+     */
+    public abstract void collect( Map<String, Number> samples );
+
+    /**
+     * Formats the name of one sample of this metric.
+     *
+     * @param suffix     the suffix to add to the metric name.
+     * @param extraLabel an additional label name, or null.
+     * @param extraValue the value of the additional label.
+     *
+     * @return the sample name.
+     */
+    protected String sampleName( String suffix, String extraLabel, String extraValue ) {
+        if ( extraLabel == null ) {
+            return name + suffix + labelText;
+        }
+        String[] all = new String[labels.length + 2];
+        System.arraycopy( labels, 0, all, 0, labels.length );
+        all[labels.length] = extraLabel;
+        all[labels.length + 1] = extraValue;
+        return name + suffix + formatLabels( all );
+    }
+
+    private static String formatLabels( String[] labels ) {
+        if ( labels.length == 0 ) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder( "{" );
+        for ( int i = 0; i < labels.length; i += 2 ) {
+            if ( i > 0 ) {
+                sb.append( ',' );
+            }
+            sb.append( labels[i] ).append( "=\"" );
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for ( int j = 0; j < value.length(); j++ ) {
+                char c = value.charAt( j );
+                switch ( c ) {
+                    case '\\':
+                        sb.append( "\\\\" );
+                        break;
+                    case '"':
+                        sb.append( "\\\"" );
+                        break;
+                    case '\n':
+                        sb.append( "\\n" );
+                        break;
+                    default:
+                        sb.append( c );
+                }
+            }
+            sb.append( '"' );
+        }
+        return sb.append( '}' ).toString();
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.metrics;
+
+import com.qhrtech.emr.launcher.DaemonThreadFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics in the Prometheus text format on the loopback address.
+ *
+ * @author Blake Dickie
+ */
+public class MetricsHttpServer {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+    private final int port;
+    private HttpServer server;
+
+    public MetricsHttpServer( MetricsRegistry registry, int port ) {
+        this.registry = registry;
+        this.port = port;
+    }
+
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : port;
+    }
+
+    public synchronized void start() throws IOException {
+        if ( server != null ) {
+            return;
+        }
+        server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ), 0 );
+        server.createContext( "/metrics", new HttpHandler() {
+
+            @Override
+            public void handle( HttpExchange exchange ) throws IOException {
+                try {
+                    if ( !"GET".equals( exchange.getRequestMethod() ) ) {
+                        exchange.sendResponseHeaders( 405, -1 );
+                        return;
+                    }
+                    StringWriter text = new StringWriter();
+                    registry.writePrometheus( text );
+                    byte[] body = text.toString().getBytes( StandardCharsets.UTF_8 );
+                    exchange.getResponseHeaders().set( "Content-Type", CONTENT_TYPE );
+                    exchange.sendResponseHeaders( 200, body.length );
+                    try ( OutputStream out = exchange.getResponseBody() ) {
+                        out.write( body );
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        } );
+        server.setExecutor( Executors.newSingleThreadExecutor( new DaemonThreadFactory( "metrics-http" ) ) );
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if ( server != null ) {
+            server.stop( 0 );
+            server = null;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes every sample in the registry as a read-only MBean attribute, named
+ * the same as in the Prometheus output. The attribute list follows the
+ * registry, so metrics registered later show up without re-registering.
+ *
+ * @author Blake Dickie
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    private final MetricsRegistry registry;
+
+    public MetricsMBean( MetricsRegistry registry ) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute( String attribute ) throws AttributeNotFoundException, MBeanException, ReflectionException {
+        Number value = registry.collect().get( attribute );
+        if ( value == null ) {
+            throw new AttributeNotFoundException( attribute );
+        }
+        return toAttributeValue( value );
+    }
+
+    @Override
+    public AttributeList getAttributes( String[] attributes ) {
+        Map<String, Number> samples = registry.collect();
+        AttributeList list = new AttributeList();
+        for ( String attribute : attributes ) {
+            Number value = samples.get( attribute );
+            if ( value != null ) {
+                list.add( new Attribute( attribute, toAttributeValue( value ) ) );
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute( Attribute attribute ) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException( "Metrics are read-only: " + attribute.getName() );
+    }
+
+    @Override
+    public AttributeList setAttributes( AttributeList attributes ) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke( String actionName, Object[] params, String[] signature ) throws MBeanException, ReflectionException {
+        throw new ReflectionException( new NoSuchMethodException( actionName ) );
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for ( Map.Entry<String, Number> sample : registry.collect().entrySet() ) {
+            boolean isDouble = sample.getValue() instanceof Double;
+            attributes.add( new MBeanAttributeInfo( sample.getKey(),
+                                                    isDouble ? Double.class.getName() : Long.class.getName(),
+                                                    sample.getKey(),
+                                                    true, false, false ) );
+        }
+        return new MBeanInfo( getClass().getName(),
+                              "Template launcher metrics",
+                              attributes.toArray( new MBeanAttributeInfo[attributes.size()] ),
+                              null,
+                              new MBeanOperationInfo[0],
+                              new MBeanNotificationInfo[0] );
+    }
+
+    private static Object toAttributeValue( Number value ) {
+        if ( value instanceof Double ) {
+            return value.doubleValue();
+        }
+        return value.longValue();
+    }
+
+}
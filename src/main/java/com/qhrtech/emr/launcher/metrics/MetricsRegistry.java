@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Holds every metric of the launcher. Metrics are looked up once, when their
+ * owner is created, and then updated directly, so the registry itself is
+ * never on the hot path.
+ *
+ * @author Blake Dickie
+ */
+public class MetricsRegistry {
+
+    public static final String MBEAN_NAME = "com.qhrtech.emr.launcher:type=Metrics";
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    public Counter counter( String name, String help, String... labels ) {
+        return register( new Counter( name, help, labels ) );
+    }
+
+    /**
+     * Gets a histogram for latencies, recorded in nanoseconds and exported in
+     * seconds.
+     *
+     * @param name   the metric name, which should end in "_seconds".
+     * @param help   a description of the metric.
+     * @param labels label names and values, alternating.
+     *
+     * @return the histogram.
+     */
+    public Histogram timer( String name, String help, String... labels ) {
+        return register( new Histogram( name, help, Histogram.LATENCY_BOUNDS, Histogram.NANOS_PER_SECOND, labels ) );
+    }
+
+    public Histogram histogram( String name, String help, long[] bounds, String... labels ) {
+        return register( new Histogram( name, help, bounds, 1, labels ) );
+    }
+
+    /**
+     * Registers a metric. If a metric with the same name and labels is
+     * already registered, that metric is returned instead.
+     *
+     * @param <T>    the metric type.
+     * @param metric the metric to register.
+     *
+     * @return the registered metric.
+     */
+    @SuppressWarnings( "unchecked" )
+    public <T extends Metric> T register( T metric ) {
+        Metric existing = metrics.putIfAbsent( metric.getKey(), metric );
+        if ( existing == null ) {
+            return metric;
+        }
+        if ( existing.getClass() != metric.getClass() ) {
+            throw new IllegalArgumentException( "Metric " + metric.getKey() + " is already registered as a different type." );
+        }
+        return (T) existing;
+    }
+
+    /**
+     * Replaces any metric with the same name and labels. Used for gauges,
+     * which read from an owner that may be recreated.
+     *
+     * @param metric the metric to register.
+     */
+    public void replace( Metric metric ) {
+        metrics.put( metric.getKey(), metric );
+    }
+
+    /**
+     * @return the metrics grouped by name, in name order.
+     */
+    public Map<String, List<Metric>> getMetrics() {
+        Map<String, List<Metric>> byName = new TreeMap<>();
+        for ( Metric metric : new TreeMap<>( metrics ).values() ) {
+            List<Metric> list = byName.get( metric.getName() );
+            if ( list == null ) {
+                list = new ArrayList<>();
+                byName.put( metric.getName(), list );
+            }
+            list.add( metric );
+        }
+        return byName;
+    }
+
+    /**
+     * @return the current value of every sample, in name order.
+     */
+    public Map<String, Number> collect() {
+        Map<String, Number> samples = new LinkedHashMap<>();
+        for ( List<Metric> list : getMetrics().values() ) {
+            for ( Metric metric : list ) {
+                metric.collect( samples );
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format.
+     *
+     * @param out the writer to write to.
+     *
+     * @throws IOException if the writer fails.
+     */
+    public void writePrometheus( Writer out ) throws IOException {
+        Map<String, Number> samples = new LinkedHashMap<>();
+        for ( Map.Entry<String, List<Metric>> entry : getMetrics().entrySet() ) {
+            Metric first = entry.getValue().get( 0 );
+            out.write( "# HELP " + entry.getKey() + " " + first.getHelp().replace( "\\", "\\\\" ).replace( "\n", "\\n" ) + "\n" );
+            out.write( "# TYPE " + entry.getKey() + " " + first.getType().getPrometheusName() + "\n" );
+            for ( Metric metric : entry.getValue() ) {
+                samples.clear();
+                metric.collect( samples );
+                for ( Map.Entry<String, Number> sample : samples.entrySet() ) {
+                    out.write( sample.getKey() + " " + sample.getValue() + "\n" );
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the metrics MBean with the platform MBean server.
+     *
+     * @throws JMException if the MBean could not be registered.
+     */
+    public void registerMBean() throws JMException {
+        ObjectName name = new ObjectName( MBEAN_NAME );
+        if ( !ManagementFactory.getPlatformMBeanServer().isRegistered( name ) ) {
+            ManagementFactory.getPlatformMBeanServer().registerMBean( new MetricsMBean( this ), name );
+        }
+    }
+
+}
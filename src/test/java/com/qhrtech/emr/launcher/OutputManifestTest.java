@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Blake Dickie
+ */
+public class OutputManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A file rewritten by something else with content of the same length must
+     * not be taken for the recorded content.
+     */
+    @Test
+    public void sameLengthChangeIsDetected() throws Exception {
+        File file = new File( folder.getRoot(), "proxy.conf" );
+        byte[] generated = "upstream a;".getBytes( StandardCharsets.UTF_8 );
+        Files.write( file.toPath(), generated );
+
+        OutputManifest manifest = new OutputManifest();
+        manifest.put( file, OutputManifest.Entry.of( generated ).withLastModified( file.lastModified() ) );
+        assertTrue( manifest.isCurrent( file, OutputManifest.Entry.of( generated ) ) );
+
+        long modified = file.lastModified();
+        Files.write( file.toPath(), "upstream b;".getBytes( StandardCharsets.UTF_8 ) );
+        assertTrue( file.setLastModified( modified + 2000 ) );
+        assertFalse( manifest.isCurrent( file, OutputManifest.Entry.of( generated ) ) );
+    }
+
+    /**
+     * Manifests saved before modification times were recorded are still read,
+     * and their files are digested again instead of being trusted.
+     */
+    @Test
+    public void manifestWithoutModificationTimesIsRechecked() throws Exception {
+        File file = new File( folder.getRoot(), "with space.conf" );
+        byte[] generated = "upstream a;".getBytes( StandardCharsets.UTF_8 );
+        Files.write( file.toPath(), "upstream b;".getBytes( StandardCharsets.UTF_8 ) );
+
+        File manifestFile = new File( folder.getRoot(), "manifest" );
+        OutputManifest original = new OutputManifest();
+        original.put( file, OutputManifest.Entry.of( generated ) );
+        original.save( manifestFile, new OutputWriter( FsyncPolicy.NONE ) );
+        String line = new String( Files.readAllBytes( manifestFile.toPath() ), StandardCharsets.UTF_8 ).trim();
+        String[] parts = line.split( " ", 4 );
+        Files.write( manifestFile.toPath(), Arrays.asList( parts[0] + " " + parts[1] + " " + parts[3] ), StandardCharsets.UTF_8 );
+
+        OutputManifest loaded = OutputManifest.load( manifestFile );
+        assertEquals( 0L, loaded.get( file ).getLastModified() );
+        assertTrue( loaded.get( file ).hasSameContent( OutputManifest.Entry.of( generated ) ) );
+        assertFalse( loaded.isCurrent( file, OutputManifest.Entry.of( generated ) ) );
+    }
+
+    @Test
+    public void modificationTimeSurvivesSaveAndLoad() throws Exception {
+        File file = new File( folder.getRoot(), "with space.conf" );
+        File manifestFile = new File( folder.getRoot(), "manifest" );
+        OutputManifest original = new OutputManifest();
+        original.put( file, OutputManifest.Entry.of( new byte[]{ 1, 2, 3 } ).withLastModified( 1234567890123L ) );
+        original.save( manifestFile, new OutputWriter( FsyncPolicy.NONE ) );
+
+        assertEquals( original, OutputManifest.load( manifestFile ) );
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.docker;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Blake Dickie
+ */
+public class DockerInstanceTest {
+
+    /**
+     * A container started after the list was taken must survive the evictions
+     * of the reconcile that took it.
+     */
+    @Test
+    public void startDuringReconcileIsKept() {
+        final FakeInstance instance = new FakeInstance();
+        instance.running.add( "old" );
+        instance.afterList = new Runnable() {
+
+            @Override
+            public void run() {
+                instance.running.add( "new" );
+                instance.updateFromEvent( "new", "start" );
+            }
+        };
+
+        assertEquals( "Containers", "[new, old]", ids( instance.collectContainers() ) );
+    }
+
+    /**
+     * A container that dies after the reconcile inspected it must not be put
+     * back by the reconcile.
+     */
+    @Test
+    public void dieDuringReconcileIsKept() {
+        final FakeInstance instance = new FakeInstance();
+        instance.running.add( "doomed" );
+        instance.running.add( "other" );
+        instance.afterInspect = new HashMap<>();
+        instance.afterInspect.put( "doomed", new Runnable() {
+
+            @Override
+            public void run() {
+                instance.running.remove( "doomed" );
+                instance.updateFromEvent( "doomed", "die" );
+            }
+        } );
+
+        assertEquals( "Containers", "[other]", ids( instance.collectContainers() ) );
+    }
+
+    private static String ids( List<DockerContainer> containers ) {
+        List<String> ids = new ArrayList<>();
+        for ( DockerContainer container : containers ) {
+            ids.add( container.getContainerId() );
+        }
+        return ids.toString();
+    }
+
+    /**
+     * Instance whose daemon is a set of running container IDs, with hooks to
+     * deliver events at awkward moments.
+     */
+    private static class FakeInstance extends DockerInstance {
+
+        private final Set<String> running = new LinkedHashSet<>();
+        private Runnable afterList;
+        private Map<String, Runnable> afterInspect;
+
+        public FakeInstance() {
+            super( "localhost", "tcp://localhost:2375", null );
+        }
+
+        @Override
+        List<String> listContainerIds() {
+            List<String> ids = new ArrayList<>( running );
+            if ( afterList != null ) {
+                Runnable hook = afterList;
+                afterList = null;
+                hook.run();
+            }
+            return ids;
+        }
+
+        @Override
+        DockerContainer inspectContainer( String containerId ) {
+            if ( !running.contains( containerId ) ) {
+                return null;
+            }
+            DockerContainer container = new DockerContainer();
+            container.setContainerId( containerId );
+            container.setMachineHostname( getHostname() );
+            // The container was seen running, anything the hook does
+            // happens after the inspect.
+            if ( afterInspect != null && afterInspect.containsKey( containerId ) ) {
+                afterInspect.remove( containerId ).run();
+            }
+            return container;
+        }
+
+    }
+
+}
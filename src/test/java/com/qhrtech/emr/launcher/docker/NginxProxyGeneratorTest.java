@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015 QHR Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qhrtech.emr.launcher.docker;
+
+import com.qhrtech.emr.launcher.FileSystemMonitor;
+import com.qhrtech.emr.launcher.OutputSink;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Blake Dickie
+ */
+public class NginxProxyGeneratorTest {
+
+    private static final int DOCKER_HOSTS = 3;
+    private static final int VIRTUAL_HOSTS = 12;
+    private static final int REPLICAS = 3;
+    private static final int SHUFFLES = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The same containers must always produce the same file, whatever order
+     * docker reports them in, or nginx is reloaded for nothing.
+     */
+    @Test
+    public void outputIsIndependentOfContainerOrder() throws Exception {
+        File certs = folder.newFolder( "certs" );
+        for ( String cert : new String[]{ "default", "example.com", "app3.example.com", "other.org" } ) {
+            assertTrue( new File( certs, cert + CertificateIndex.CERT_EXTENSION ).createNewFile() );
+        }
+        File configs = folder.newFolder( "confs" );
+        for ( String include : new String[]{ "app1.example.com", "app7.other.org" } ) {
+            assertTrue( new File( configs, include + NginxProxyGenerator.CONF_EXTENSION ).createNewFile() );
+        }
+
+        NginxProxyGenerator generator = new NginxProxyGenerator( new File( folder.getRoot(), "proxy.conf" ), certs, configs );
+        generator.setKeepalive( 16 );
+        generator.setCacheDir( new File( folder.getRoot(), "cache" ) );
+
+        List<DockerContainer> fleet = buildFleet();
+        byte[] expected = render( generator, fleet );
+        assertTrue( "Nothing was generated", expected.length > 0 );
+
+        Random random = new Random( 42 );
+        for ( int i = 0; i < SHUFFLES; i++ ) {
+            Collections.shuffle( fleet, random );
+            assertArrayEquals( "Output changed after shuffle " + i, expected, render( generator, fleet ) );
+        }
+    }
+
+    /**
+     * Once the include folder can no longer be watched, changes to it are no
+     * longer reported and must be picked up by checking the folder again.
+     */
+    @Test
+    public void includesAreRescannedAfterWatchIsLost() throws Exception {
+        File configs = folder.newFolder( "confs" );
+        NginxProxyGenerator generator = new NginxProxyGenerator( new File( folder.getRoot(), "proxy.conf" ), null, configs );
+        RecordingMonitor monitor = new RecordingMonitor();
+        generator.registerWatches( monitor );
+
+        List<DockerContainer> fleet = buildFleet();
+        File include = new File( configs, "app1.example.com" + NginxProxyGenerator.CONF_EXTENSION );
+        String marker = "include " + include.getAbsolutePath() + ";";
+        monitor.listeners.get( configs.getAbsoluteFile() ).watchLost( configs.getAbsoluteFile() );
+        assertFalse( new String( render( generator, fleet ), StandardCharsets.UTF_8 ).contains( marker ) );
+
+        assertTrue( include.createNewFile() );
+        assertTrue( "Include added after the watch was lost is missing",
+                    new String( render( generator, fleet ), StandardCharsets.UTF_8 ).contains( marker ) );
+    }
+
+    private static byte[] render( NginxProxyGenerator generator, List<DockerContainer> fleet ) throws Exception {
+        DockerState state = new DockerState();
+        for ( DockerContainer container : fleet ) {
+            state.addContainer( container );
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.generate( state, new OutputSink() {
+
+            @Override
+            public OutputStream open( File file ) throws IOException {
+                return out;
+            }
+        } );
+        return out.toByteArray();
+    }
+
+    private static List<DockerContainer> buildFleet() {
+        List<DockerContainer> fleet = new ArrayList<>();
+        int index = 0;
+        for ( int host = 0; host < VIRTUAL_HOSTS; host++ ) {
+            String domain = host % 4 == 3 ? "other.org" : "example.com";
+            for ( int replica = 0; replica < REPLICAS; replica++ ) {
+                Map<String, String> env = new HashMap<>();
+                env.put( "VIRTUAL_HOST", "app" + host + "." + domain );
+                env.put( "VIRTUAL_PORT", "8080" );
+                env.put( "VIRTUAL_WEIGHT", Integer.toString( replica + 1 ) );
+                if ( host % 3 == 0 ) {
+                    env.put( "VIRTUAL_HOST_ADMIN", "admin" + host + "." + domain + ",ops" + host + "." + domain );
+                    env.put( "VIRTUAL_PORT_ADMIN", "9090" );
+                    env.put( "HTTPS_MODE_ADMIN", "enabled" );
+                }
+                if ( host % 5 == 0 ) {
+                    env.put( "PROXY_CACHE", "10m" );
+                    env.put( "PROXY_BALANCE", NginxProxyGenerator.BALANCE_LEAST_CONN );
+                }
+
+                DockerContainer container = new DockerContainer();
+                container.setContainerId( String.format( "%064x", index * 7919L ) );
+                container.setMachineHostname( "docker" + ( index % DOCKER_HOSTS ) + ".example.com" );
+                container.setEnvironment( env );
+                container.addPort( port( 8080, 32768 + index ) );
+                container.addPort( port( 9090, 40000 + index ) );
+                fleet.add( container );
+                index++;
+            }
+        }
+        return fleet;
+    }
+
+    private static class RecordingMonitor extends FileSystemMonitor {
+
+        private final Map<File, FileSystemMonitor.Listener> listeners = new HashMap<>();
+
+        public RecordingMonitor() {
+            super( new Runnable() {
+
+                @Override
+                public void run() {
+                }
+            } );
+        }
+
+        @Override
+        public synchronized boolean watch( File directory, boolean recursive, FileSystemMonitor.Listener listener ) {
+            listeners.put( directory.getAbsoluteFile(), listener );
+            return true;
+        }
+
+    }
+
+    private static DockerPort port( int containerPort, int machinePort ) {
+        DockerPort port = new DockerPort();
+        port.setContainerPort( containerPort );
+        port.setMachinePort( machinePort );
+        return port;
+    }
+
+}